@@ -0,0 +1,79 @@
+package dev.lunov.p2p_server.config;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Builds the executors behind {@code clientInboundChannel}, {@code clientOutboundChannel} and
+ * {@code brokerChannel} from {@code websocket.executor.<channel>.*}.
+ * <p>
+ * {@code mode} is {@code pool} (thread pool sized by {@code core-pool-size}, {@code max-pool-size}
+ * and {@code queue-capacity}), {@code virtual} (one virtual thread per message, so a blocking
+ * handler such as the user lookup on CONNECT never starves the others) or {@code none}, which
+ * keeps Spring's default: a plain pool for the client channels and the caller's thread for
+ * the broker channel.
+ */
+@Component
+public class ChannelExecutors {
+
+    @Autowired
+    private Environment environment;
+
+    private final Map<String, InstrumentedExecutor> executors = new LinkedHashMap<>();
+
+    public synchronized InstrumentedExecutor get(String channel, String defaultMode) {
+        if (executors.containsKey(channel)) {
+            return executors.get(channel);
+        }
+        String prefix = "websocket.executor." + channel + ".";
+        String mode = environment.getProperty(prefix + "mode", defaultMode);
+        int cores = Runtime.getRuntime().availableProcessors();
+        InstrumentedExecutor executor = switch (mode) {
+            case "none" -> null;
+            case "virtual" -> new InstrumentedExecutor(mode,
+                    Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(channel + "-vt-", 0).factory()), null);
+            case "pool" -> {
+                ThreadPoolTaskExecutor pool = new ThreadPoolTaskExecutor();
+                pool.setThreadNamePrefix(channel + "-");
+                pool.setCorePoolSize(environment.getProperty(prefix + "core-pool-size", Integer.class, cores * 2));
+                pool.setMaxPoolSize(environment.getProperty(prefix + "max-pool-size", Integer.class, Integer.MAX_VALUE));
+                pool.setQueueCapacity(environment.getProperty(prefix + "queue-capacity", Integer.class, Integer.MAX_VALUE));
+                pool.setKeepAliveSeconds(60);
+                pool.setAllowCoreThreadTimeOut(true);
+                pool.initialize();
+                yield new InstrumentedExecutor(mode, pool, pool.getThreadPoolExecutor());
+            }
+            default -> throw new IllegalArgumentException("Unknown executor mode '" + mode + "' for " + prefix + "mode");
+        };
+        executors.put(channel, executor);
+        return executor;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        executors.forEach((channel, executor) -> stats.put(channel, executor == null ? Map.of("mode", "none") : executor.getStats()));
+        return stats;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        for (InstrumentedExecutor executor : executors.values()) {
+            if (executor == null) {
+                continue;
+            }
+            if (executor.getDelegate() instanceof ThreadPoolTaskExecutor pool) {
+                pool.shutdown();
+            } else if (executor.getDelegate() instanceof ExecutorService service) {
+                service.shutdown();
+            }
+        }
+    }
+}
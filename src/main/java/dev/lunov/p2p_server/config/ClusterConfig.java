@@ -0,0 +1,33 @@
+package dev.lunov.p2p_server.config;
+
+import dev.lunov.p2p_server.service.ClusterBus;
+import dev.lunov.p2p_server.service.LoopbackClusterBus;
+import dev.lunov.p2p_server.service.StandaloneClusterBus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.UUID;
+
+@Configuration
+public class ClusterConfig {
+
+    @Value("${cluster.mode:standalone}")
+    private String mode;
+
+    @Value("${cluster.node-id:}")
+    private String nodeId;
+
+    @Value("${cluster.loopback.network:default}")
+    private String loopbackNetwork;
+
+    @Bean(destroyMethod = "close")
+    public ClusterBus clusterBus() {
+        String id = nodeId.isBlank() ? UUID.randomUUID().toString().substring(0, 8) : nodeId;
+        return switch (mode) {
+            case "standalone" -> new StandaloneClusterBus(id);
+            case "loopback" -> new LoopbackClusterBus(loopbackNetwork, id);
+            default -> throw new IllegalArgumentException("Unknown cluster.mode: " + mode);
+        };
+    }
+}
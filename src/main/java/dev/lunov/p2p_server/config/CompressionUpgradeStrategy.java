@@ -0,0 +1,100 @@
+package dev.lunov.p2p_server.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.server.HandshakeFailureException;
+import org.springframework.web.socket.server.standard.StandardWebSocketUpgradeStrategy;
+
+import java.security.Principal;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides whether {@code permessage-deflate} is negotiated on {@code /signal}. Tomcat negotiates
+ * it on its own from the request's {@code Sec-WebSocket-Extensions} header whenever the client
+ * offers it; with {@code websocket.compression.enabled=false} that header is hidden from the
+ * container, so the session runs uncompressed.
+ * <p>
+ * Once negotiated, Tomcat deflates every text and binary frame of the session: it has no
+ * per-message size threshold, and a custom one would need Tomcat's internal transformation API.
+ * Compression is therefore off by default, so small signaling frames are sent as they are; turn
+ * it on for clients on slow links, where presence snapshots and SDP shrink by 75-95%
+ * (see {@code CompressionBenchmark}).
+ */
+public class CompressionUpgradeStrategy extends StandardWebSocketUpgradeStrategy {
+
+    private static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+
+    private final boolean compression;
+    private final LongAdder negotiated = new LongAdder();
+    private final LongAdder declined = new LongAdder();
+
+    public CompressionUpgradeStrategy(boolean compression) {
+        this.compression = compression;
+    }
+
+    @Override
+    public List<WebSocketExtension> getSupportedExtensions(ServerHttpRequest request) {
+        List<WebSocketExtension> supported = super.getSupportedExtensions(request);
+        return compression ? supported : supported.stream()
+                .filter(extension -> !PERMESSAGE_DEFLATE.equalsIgnoreCase(extension.getName()))
+                .toList();
+    }
+
+    @Override
+    public void upgrade(ServerHttpRequest request, ServerHttpResponse response, String selectedProtocol,
+                        List<WebSocketExtension> selectedExtensions, Principal user,
+                        WebSocketHandler wsHandler, Map<String, Object> attrs) throws HandshakeFailureException {
+        String offered = request.getHeaders().getFirst(WebSocketHttpHeaders.SEC_WEBSOCKET_EXTENSIONS);
+        if (offered != null && offered.toLowerCase().contains(PERMESSAGE_DEFLATE)) {
+            if (compression) {
+                negotiated.increment();
+            } else {
+                declined.increment();
+                request = new ServletServerHttpRequest(withoutExtensions(getHttpServletRequest(request)));
+            }
+        }
+        super.upgrade(request, response, selectedProtocol, selectedExtensions, user, wsHandler, attrs);
+    }
+
+    static HttpServletRequest withoutExtensions(HttpServletRequest request) {
+        return new HttpServletRequestWrapper(request) {
+            @Override
+            public String getHeader(String name) {
+                return isExtensions(name) ? null : super.getHeader(name);
+            }
+
+            @Override
+            public Enumeration<String> getHeaders(String name) {
+                return isExtensions(name) ? Collections.emptyEnumeration() : super.getHeaders(name);
+            }
+
+            @Override
+            public Enumeration<String> getHeaderNames() {
+                return Collections.enumeration(Collections.list(super.getHeaderNames()).stream()
+                        .filter(name -> !isExtensions(name))
+                        .toList());
+            }
+
+            private boolean isExtensions(String name) {
+                return WebSocketHttpHeaders.SEC_WEBSOCKET_EXTENSIONS.equalsIgnoreCase(name);
+            }
+        };
+    }
+
+    public Map<String, Object> getStats() {
+        return Map.of(
+                "enabled", compression,
+                "negotiated", negotiated.sum(),
+                "declined", declined.sum());
+    }
+}
@@ -0,0 +1,33 @@
+package dev.lunov.p2p_server.config;
+
+import dev.lunov.p2p_server.service.EncodedPayload;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.AbstractMessageConverter;
+import org.springframework.util.MimeTypeUtils;
+
+/**
+ * Lets {@link EncodedPayload} be sent through {@code SimpMessagingTemplate} and returned from
+ * {@code @SubscribeMapping} methods as-is, instead of running Jackson over it again.
+ */
+public class EncodedPayloadMessageConverter extends AbstractMessageConverter {
+
+    public EncodedPayloadMessageConverter() {
+        super(MimeTypeUtils.APPLICATION_JSON);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return EncodedPayload.class == clazz;
+    }
+
+    @Override
+    protected boolean canConvertFrom(Message<?> message, Class<?> targetClass) {
+        return false;
+    }
+
+    @Override
+    protected Object convertToInternal(Object payload, MessageHeaders headers, Object conversionHint) {
+        return ((EncodedPayload) payload).bytes();
+    }
+}
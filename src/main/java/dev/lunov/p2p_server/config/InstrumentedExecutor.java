@@ -0,0 +1,74 @@
+package dev.lunov.p2p_server.config;
+
+import org.springframework.core.task.TaskExecutor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Wraps a channel executor and counts what goes through it, so pool saturation shows up in
+ * {@code /api/admin/metrics} regardless of whether the channel runs on a pool or virtual threads.
+ */
+public class InstrumentedExecutor implements TaskExecutor {
+
+    private final String mode;
+    private final Executor delegate;
+    private final ThreadPoolExecutor pool;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+
+    public InstrumentedExecutor(String mode, Executor delegate, ThreadPoolExecutor pool) {
+        this.mode = mode;
+        this.delegate = delegate;
+        this.pool = pool;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        long enqueuedAt = System.nanoTime();
+        submitted.increment();
+        try {
+            delegate.execute(() -> {
+                queueWaitNanos.add(System.nanoTime() - enqueuedAt);
+                try {
+                    task.run();
+                } finally {
+                    completed.increment();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            submitted.decrement();
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    public Executor getDelegate() {
+        return delegate;
+    }
+
+    public Map<String, Object> getStats() {
+        long done = completed.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", mode);
+        stats.put("submitted", submitted.sum());
+        stats.put("completed", done);
+        stats.put("inFlight", submitted.sum() - done);
+        stats.put("rejected", rejected.sum());
+        stats.put("avgQueueWaitMicros", done == 0 ? 0 : queueWaitNanos.sum() / done / 1000);
+        if (pool != null) {
+            stats.put("poolSize", pool.getPoolSize());
+            stats.put("activeThreads", pool.getActiveCount());
+            stats.put("largestPoolSize", pool.getLargestPoolSize());
+            stats.put("queued", pool.getQueue().size());
+        }
+        return stats;
+    }
+}
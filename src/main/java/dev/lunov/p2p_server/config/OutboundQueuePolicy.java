@@ -0,0 +1,182 @@
+package dev.lunov.p2p_server.config;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Slow-consumer and priority policy for WebSocket sessions: wraps every session in an
+ * {@link OutboundQueueSession} configured from {@code websocket.outbound.*}. Destinations are
+ * mapped to a {@link TrafficClass} by prefix; anything unlisted is {@link TrafficClass#DEFAULT}.
+ */
+@Component
+public class OutboundQueuePolicy {
+
+    @Value("${websocket.outbound.latest-wins:/topic/peers,/topic/channels}")
+    private Set<String> latestWinsDestinations;
+
+    @Value("${websocket.outbound.priority.signaling:/topic/call/,/topic/answer/,/topic/hangup/,/topic/webrtc/}")
+    private List<String> signalingPrefixes;
+
+    @Value("${websocket.outbound.priority.bulk:/topic/channel/,/topic/message/,/topic/file/request/}")
+    private List<String> bulkPrefixes;
+
+    @Value("${websocket.outbound.queue-limit-bytes:1048576}")
+    private long queueLimitBytes;
+
+    @Value("${websocket.outbound.hard-limit-bytes:4194304}")
+    private long hardLimitBytes;
+
+    @Value("${websocket.outbound.slow-consumer-ms:10000}")
+    private long slowConsumerMs;
+
+    private final Map<String, OutboundQueueSession> sessions = new ConcurrentHashMap<>();
+    private final ExecutorService writers = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("ws-writer-", 0).factory());
+
+    private final LongAdder collapsed = new LongAdder();
+    // Per TrafficClass: frames currently queued across all sessions, and frames written
+    private final AtomicLongArray depth = new AtomicLongArray(TrafficClass.values().length);
+    private final AtomicLongArray sent = new AtomicLongArray(TrafficClass.values().length);
+    private final LongAdder closed = new LongAdder();
+    private final Logger logger = Logger.getLogger(OutboundQueuePolicy.class.getName());
+
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                OutboundQueueSession queued = new OutboundQueueSession(session, OutboundQueuePolicy.this, writers);
+                sessions.put(session.getId(), queued);
+                super.afterConnectionEstablished(queued);
+            }
+
+            @Override
+            public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+                super.handleMessage(queued(session), message);
+            }
+
+            @Override
+            public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
+                super.handleTransportError(queued(session), exception);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                OutboundQueueSession queued = sessions.remove(session.getId());
+                if (queued != null) {
+                    queued.discard();
+                }
+                super.afterConnectionClosed(queued != null ? queued : session, closeStatus);
+            }
+        };
+    }
+
+    private WebSocketSession queued(WebSocketSession session) {
+        OutboundQueueSession queued = sessions.get(session.getId());
+        return queued != null ? queued : session;
+    }
+
+    public boolean isLatestWins(String destination) {
+        return latestWinsDestinations.contains(destination);
+    }
+
+    /**
+     * @param destination the MESSAGE frame's destination, {@code null} for control frames
+     */
+    public TrafficClass classify(String destination) {
+        if (destination == null) {
+            return TrafficClass.SIGNALING;
+        }
+        for (String prefix : signalingPrefixes) {
+            if (destination.startsWith(prefix)) {
+                return TrafficClass.SIGNALING;
+            }
+        }
+        for (String prefix : bulkPrefixes) {
+            if (destination.startsWith(prefix)) {
+                return TrafficClass.BULK;
+            }
+        }
+        return TrafficClass.DEFAULT;
+    }
+
+    public long getQueueLimitBytes() {
+        return queueLimitBytes;
+    }
+
+    public long getHardLimitBytes() {
+        return hardLimitBytes;
+    }
+
+    public long getSlowConsumerMs() {
+        return slowConsumerMs;
+    }
+
+    void recordQueued(TrafficClass trafficClass) {
+        depth.incrementAndGet(trafficClass.ordinal());
+    }
+
+    void recordDequeued(TrafficClass trafficClass) {
+        depth.decrementAndGet(trafficClass.ordinal());
+        sent.incrementAndGet(trafficClass.ordinal());
+    }
+
+    void recordCollapsed(TrafficClass trafficClass) {
+        depth.decrementAndGet(trafficClass.ordinal());
+        collapsed.increment();
+    }
+
+    void recordDropped(TrafficClass trafficClass, int frames) {
+        depth.addAndGet(trafficClass.ordinal(), -frames);
+    }
+
+    void recordClosed(String sessionId, String reason) {
+        closed.increment();
+        logger.warning("Closing slow consumer " + sessionId + ": " + reason);
+    }
+
+    public Map<String, Object> getStats() {
+        long queuedBytes = 0;
+        long maxQueuedBytes = 0;
+        for (OutboundQueueSession session : sessions.values()) {
+            long bytes = session.getQueuedBytes();
+            queuedBytes += bytes;
+            maxQueuedBytes = Math.max(maxQueuedBytes, bytes);
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sessions", sessions.size());
+        stats.put("queuedBytes", queuedBytes);
+        stats.put("maxSessionQueuedBytes", maxQueuedBytes);
+        Map<String, Object> classes = new LinkedHashMap<>();
+        for (TrafficClass trafficClass : TrafficClass.values()) {
+            classes.put(trafficClass.name().toLowerCase(), Map.of(
+                    "queued", depth.get(trafficClass.ordinal()),
+                    "sent", sent.get(trafficClass.ordinal())));
+        }
+        stats.put("classes", classes);
+        stats.put("collapsedFrames", collapsed.sum());
+        stats.put("slowConsumersClosed", closed.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writers.shutdownNow();
+    }
+}
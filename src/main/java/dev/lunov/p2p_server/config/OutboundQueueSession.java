@@ -0,0 +1,263 @@
+package dev.lunov.p2p_server.config;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Per-session outbound queue underneath Spring's {@code ConcurrentWebSocketSessionDecorator}.
+ * {@link #sendMessage} never blocks: frames are queued and written by a drain task, so the
+ * caller (an outbound channel thread) is released immediately.
+ * <p>
+ * Frames to a latest-wins destination replace the one still queued for that destination, so
+ * a client that falls behind gets the newest snapshot instead of a backlog of stale ones.
+ * Everything else (signaling, presence deltas) stays in FIFO order within its
+ * {@link TrafficClass} lane, and higher lanes are written first, so ICE overtakes queued chat.
+ * A session whose queue stays over the byte limit for longer than the slow-consumer threshold,
+ * or whose current write has been stuck past it, is closed; one whose queue passes the hard
+ * limit is closed at once. Both limits count every queued frame, latest-wins ones included.
+ */
+public class OutboundQueueSession extends WebSocketSessionDecorator {
+
+    private final OutboundQueuePolicy policy;
+    private final Executor writer;
+
+    // One lane per TrafficClass; keys are the destination for latest-wins frames and a sequence
+    // number for the rest. The lanes array doubles as the lock for all queue state.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final LinkedHashMap<Object, WebSocketMessage<?>>[] lanes = new LinkedHashMap[TrafficClass.values().length];
+    private int queued;
+    private long sequence;
+    private long queuedBytes;
+    // Since when queuedBytes has been over the limit, or 0
+    private long overLimitSince;
+    private boolean draining;
+    private volatile long writeStartedAt;
+    private volatile boolean closing;
+    private CloseStatus pendingClose;
+
+    public OutboundQueueSession(WebSocketSession delegate, OutboundQueuePolicy policy, Executor writer) {
+        super(delegate);
+        this.policy = policy;
+        this.writer = writer;
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new LinkedHashMap<>();
+        }
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (closing) {
+            return;
+        }
+        String destination = destinationOf(message);
+        boolean startDrain;
+        String slowReason = null;
+        synchronized (lanes) {
+            if (pendingClose != null) {
+                return;
+            }
+            TrafficClass trafficClass = policy.classify(destination);
+            LinkedHashMap<Object, WebSocketMessage<?>> lane = lanes[trafficClass.ordinal()];
+            if (destination != null && policy.isLatestWins(destination)) {
+                WebSocketMessage<?> replaced = lane.remove(destination);
+                if (replaced != null) {
+                    queued--;
+                    queuedBytes -= replaced.getPayloadLength();
+                    policy.recordCollapsed(trafficClass);
+                }
+                lane.put(destination, message);
+            } else {
+                lane.put(sequence++, message);
+            }
+            queued++;
+            queuedBytes += message.getPayloadLength();
+            policy.recordQueued(trafficClass);
+
+            long now = System.currentTimeMillis();
+            long writing = writeStartedAt;
+            if (queuedBytes <= policy.getQueueLimitBytes()) {
+                overLimitSince = 0;
+            } else if (overLimitSince == 0) {
+                overLimitSince = now;
+            }
+            if (queuedBytes > policy.getHardLimitBytes()) {
+                slowReason = "outbound queue over " + policy.getHardLimitBytes() + " bytes";
+            } else if (overLimitSince != 0 && now - overLimitSince > policy.getSlowConsumerMs()) {
+                slowReason = "outbound queue over " + policy.getQueueLimitBytes() + " bytes for over "
+                        + policy.getSlowConsumerMs() + " ms";
+            } else if (writing != 0 && now - writing > policy.getSlowConsumerMs()) {
+                slowReason = "write stalled for over " + policy.getSlowConsumerMs() + " ms";
+            }
+            startDrain = !draining && slowReason == null;
+            if (startDrain) {
+                draining = true;
+            }
+        }
+        if (slowReason != null) {
+            closeSlowConsumer(slowReason);
+        } else if (startDrain) {
+            writer.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            WebSocketMessage<?> next = null;
+            CloseStatus closeAfterDrain = null;
+            synchronized (lanes) {
+                if (closing || queued == 0) {
+                    draining = false;
+                    if (!closing && pendingClose != null) {
+                        closing = true;
+                        closeAfterDrain = pendingClose;
+                    }
+                } else {
+                    for (int i = 0; next == null; i++) {
+                        Iterator<Map.Entry<Object, WebSocketMessage<?>>> it = lanes[i].entrySet().iterator();
+                        if (it.hasNext()) {
+                            next = it.next().getValue();
+                            it.remove();
+                            policy.recordDequeued(TrafficClass.values()[i]);
+                        }
+                    }
+                    queued--;
+                    queuedBytes -= next.getPayloadLength();
+                    if (queuedBytes <= policy.getQueueLimitBytes()) {
+                        overLimitSince = 0;
+                    }
+                }
+            }
+            if (next == null) {
+                if (closeAfterDrain != null) {
+                    closeDelegate(closeAfterDrain);
+                }
+                return;
+            }
+            writeStartedAt = System.currentTimeMillis();
+            try {
+                getDelegate().sendMessage(next);
+            } catch (IOException | RuntimeException e) {
+                if (getDelegate().isOpen()) {
+                    closeSlowConsumer("write failed: " + e.getMessage());
+                } else {
+                    discard();
+                }
+            } finally {
+                writeStartedAt = 0;
+            }
+        }
+    }
+
+    private void closeSlowConsumer(String reason) {
+        if (discard()) {
+            policy.recordClosed(getId(), reason);
+            closeDelegate(CloseStatus.SESSION_NOT_RELIABLE);
+        }
+    }
+
+    /**
+     * Drops everything still queued and refuses further frames. Also called when the
+     * transport closes underneath us.
+     *
+     * @return {@code false} if the session was already closing
+     */
+    boolean discard() {
+        synchronized (lanes) {
+            if (closing) {
+                return false;
+            }
+            closing = true;
+            for (int i = 0; i < lanes.length; i++) {
+                policy.recordDropped(TrafficClass.values()[i], lanes[i].size());
+                lanes[i].clear();
+            }
+            queued = 0;
+            queuedBytes = 0;
+            overLimitSince = 0;
+            return true;
+        }
+    }
+
+    /**
+     * Closes once the frames already queued have been written, so a STOMP ERROR sent right
+     * before the close still reaches the client.
+     */
+    @Override
+    public void close(CloseStatus status) {
+        synchronized (lanes) {
+            if (closing || pendingClose != null) {
+                return;
+            }
+            if (draining) {
+                pendingClose = status;
+                return;
+            }
+            closing = true;
+        }
+        closeDelegate(status);
+    }
+
+    private void closeDelegate(CloseStatus status) {
+        try {
+            getDelegate().close(status);
+        } catch (IOException ignored) {
+            // The transport is already gone
+        }
+    }
+
+    public long getQueuedBytes() {
+        synchronized (lanes) {
+            return queuedBytes;
+        }
+    }
+
+    /**
+     * Reads the {@code destination} header of a STOMP MESSAGE frame without parsing the body.
+     */
+    static String destinationOf(WebSocketMessage<?> message) {
+        String frame;
+        if (message instanceof TextMessage text) {
+            frame = text.getPayload();
+        } else if (message instanceof BinaryMessage binary) {
+            frame = headersOf(binary.getPayload());
+        } else {
+            return null;
+        }
+        if (!frame.startsWith("MESSAGE\n")) {
+            return null;
+        }
+        int headersEnd = frame.indexOf("\n\n");
+        int start = frame.indexOf("\ndestination:");
+        if (start < 0 || (headersEnd >= 0 && start > headersEnd)) {
+            return null;
+        }
+        start += "\ndestination:".length();
+        int end = frame.indexOf('\n', start);
+        return end < 0 ? null : frame.substring(start, end);
+    }
+
+    /**
+     * Decodes the command and headers of a binary STOMP frame, up to the blank line.
+     */
+    private static String headersOf(ByteBuffer payload) {
+        ByteBuffer frame = payload.duplicate();
+        int end = frame.position();
+        while (end + 1 < frame.limit() && !(frame.get(end) == '\n' && frame.get(end + 1) == '\n')) {
+            end++;
+        }
+        frame.limit(Math.min(end + 2, frame.limit()));
+        return StandardCharsets.UTF_8.decode(frame).toString();
+    }
+}
@@ -0,0 +1,14 @@
+package dev.lunov.p2p_server.config;
+
+/**
+ * Outbound priority lanes, highest first. Each session drains {@link #SIGNALING} before
+ * {@link #DEFAULT} before {@link #BULK}; order is only preserved within a lane.
+ */
+public enum TrafficClass {
+    /** Call setup (call, answer, hangup, SDP, ICE) and STOMP control frames. */
+    SIGNALING,
+    /** Presence, channel lists, file signaling after the request. */
+    DEFAULT,
+    /** Channel chat, direct messages (up to 10 MB) and file requests. */
+    BULK
+}
@@ -6,10 +6,22 @@ import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBr
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import dev.lunov.p2p_server.security.AuthChannelInterceptor;
+import dev.lunov.p2p_server.security.PeerTopicInterceptor;
+import dev.lunov.p2p_server.security.RateLimitInterceptor;
+import dev.lunov.p2p_server.service.PeerLiveness;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.messaging.simp.config.ChannelRegistration;
+import org.springframework.messaging.converter.MessageConverter;
+
+import java.util.List;
 
 @Configuration
 @EnableWebSocketMessageBroker
@@ -18,26 +30,106 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     @Autowired
     private AuthChannelInterceptor authChannelInterceptor;
 
+    @Autowired
+    private RateLimitInterceptor rateLimitInterceptor;
+
+    @Autowired
+    private PeerTopicInterceptor peerTopicInterceptor;
+
+    @Autowired
+    private PeerLiveness peerLiveness;
+
+    // Lazy: created by the message broker configuration this class contributes to
+    @Autowired
+    @Lazy
+    @Qualifier("messageBrokerTaskScheduler")
+    private TaskScheduler heartbeatScheduler;
+
+    @Autowired
+    private ChannelExecutors channelExecutors;
+
+    @Autowired
+    private OutboundQueuePolicy outboundQueuePolicy;
+
+    @Value("${websocket.compression.enabled:false}")
+    private boolean compression;
+
+    @Value("${websocket.heartbeat.server-ms:10000}")
+    private long heartbeatServerMs;
+
+    @Value("${websocket.heartbeat.client-ms:10000}")
+    private long heartbeatClientMs;
+
+    @Bean
+    public CompressionUpgradeStrategy compressionUpgradeStrategy() {
+        return new CompressionUpgradeStrategy(compression);
+    }
+
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
-        registration.interceptors(authChannelInterceptor);
+        // Liveness first: a heart-beat or a frame refused further down still shows the peer is there
+        registration.interceptors(peerLiveness, authChannelInterceptor, rateLimitInterceptor, peerTopicInterceptor);
+        InstrumentedExecutor executor = channelExecutors.get("inbound", "pool");
+        if (executor != null) {
+            registration.executor(executor);
+        }
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        InstrumentedExecutor executor = channelExecutors.get("outbound", "pool");
+        if (executor != null) {
+            registration.executor(executor);
+        }
+    }
+
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        // First in line: Spring Boot contributes its own Jackson converter, which would otherwise
+        // serialize EncodedPayload as an object
+        messageConverters.add(0, new EncodedPayloadMessageConverter());
+        return true;
     }
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
-        registry.enableSimpleBroker("/topic");
+        // Offers heart-beats in CONNECTED; a client that agrees to send them and goes quiet is
+        // disconnected by the broker, see also PeerLiveness
+        registry.enableSimpleBroker("/topic")
+                .setHeartbeatValue(new long[]{heartbeatServerMs, heartbeatClientMs})
+                .setTaskScheduler(heartbeatScheduler);
         registry.setApplicationDestinationPrefixes("/app");
+        // Presence deltas must reach each session in version order
+        registry.setPreservePublishOrder(true);
+        InstrumentedExecutor brokerExecutor = channelExecutors.get("broker", "none");
+        if (brokerExecutor != null) {
+            registry.configureBrokerChannel().executor(brokerExecutor);
+        }
     }
 
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
-        registry.addEndpoint("/signal").setAllowedOrigins("*").withSockJS();
+        DefaultHandshakeHandler handshakeHandler = new DefaultHandshakeHandler(compressionUpgradeStrategy());
+        registry.addEndpoint("/signal")
+                .setHandshakeHandler(handshakeHandler)
+                .setAllowedOrigins("*")
+                .withSockJS();
+        // Plain WebSocket for native clients: no SockJS framing, and application/octet-stream
+        // MESSAGE frames are sent as binary WebSocket frames
+        registry.addEndpoint("/signal-ws")
+                .setHandshakeHandler(handshakeHandler)
+                .setAllowedOrigins("*");
+        // Handle each session's frames in arrival order so SDP precedes its ICE candidates
+        registry.setPreserveReceiveOrder(true);
     }
 
     @Override
     public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
         registration.setMessageSizeLimit(10 * 1024 * 1024);        // 10 MB per message
-        registration.setSendBufferSizeLimit(20 * 1024 * 1024);  // 20 MB send buffer
-        registration.setSendTimeLimit(60 * 1000);              // 60 sec send timeout
+        // Sends are queued per session by OutboundQueuePolicy and never block, so Spring's own
+        // buffer only holds frames racing one another into that queue
+        registration.setSendBufferSizeLimit(Math.toIntExact(outboundQueuePolicy.getQueueLimitBytes()));
+        registration.setSendTimeLimit(10 * 1000);
+        registration.addDecoratorFactory(outboundQueuePolicy::decorate);
     }
 }
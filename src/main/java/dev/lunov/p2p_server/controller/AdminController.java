@@ -1,12 +1,32 @@
 package dev.lunov.p2p_server.controller;
 
-import dev.lunov.p2p_server.model.Peer;
+import dev.lunov.p2p_server.config.ChannelExecutors;
+import dev.lunov.p2p_server.config.CompressionUpgradeStrategy;
+import dev.lunov.p2p_server.config.OutboundQueuePolicy;
+import dev.lunov.p2p_server.dto.PeerPage;
 import dev.lunov.p2p_server.model.Report;
 import dev.lunov.p2p_server.model.Role;
 import dev.lunov.p2p_server.model.User;
 import dev.lunov.p2p_server.repository.ReportRepository;
 import dev.lunov.p2p_server.repository.UserRepository;
+import dev.lunov.p2p_server.security.RateLimitInterceptor;
+import dev.lunov.p2p_server.service.Announcements;
+import dev.lunov.p2p_server.service.CallRegistry;
+import dev.lunov.p2p_server.service.ClusterReplicator;
+import dev.lunov.p2p_server.service.ChannelFileStore;
+import dev.lunov.p2p_server.service.FileCleanupService;
+import dev.lunov.p2p_server.service.FileMetadataCache;
+import dev.lunov.p2p_server.service.PeerLiveness;
+import dev.lunov.p2p_server.service.ResumableUploads;
+import dev.lunov.p2p_server.service.StorageQuotas;
+import dev.lunov.p2p_server.service.ChannelHistory;
+import dev.lunov.p2p_server.service.ChannelMembership;
+import dev.lunov.p2p_server.service.ChannelRegistry;
+import dev.lunov.p2p_server.service.IceCoalescer;
+import dev.lunov.p2p_server.service.Mailbox;
+import dev.lunov.p2p_server.service.PresenceService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
@@ -29,6 +49,63 @@ public class AdminController {
     @Autowired
     private SignalController signalController;
 
+    @Autowired
+    private PresenceService presenceService;
+
+    @Autowired
+    private ChannelRegistry channelRegistry;
+
+    @Autowired
+    private IceCoalescer iceCoalescer;
+
+    @Autowired
+    private ChannelExecutors channelExecutors;
+
+    @Autowired
+    private OutboundQueuePolicy outboundQueuePolicy;
+
+    @Autowired
+    private CompressionUpgradeStrategy compressionUpgradeStrategy;
+
+    @Autowired
+    private RateLimitInterceptor rateLimitInterceptor;
+
+    @Autowired
+    private Mailbox mailbox;
+
+    @Autowired
+    private ChannelHistory channelHistory;
+
+    @Autowired
+    private ChannelMembership channelMembership;
+
+    @Autowired
+    private CallRegistry callRegistry;
+
+    @Autowired
+    private ClusterReplicator clusterReplicator;
+
+    @Autowired
+    private PeerLiveness peerLiveness;
+
+    @Autowired
+    private ResumableUploads resumableUploads;
+
+    @Autowired
+    private FileMetadataCache fileMetadataCache;
+
+    @Autowired
+    private ChannelFileStore channelFileStore;
+
+    @Autowired
+    private FileCleanupService fileCleanupService;
+
+    @Autowired
+    private StorageQuotas storageQuotas;
+
+    @Autowired
+    private Announcements announcements;
+
     @Autowired
     private UserRepository userRepository;
 
@@ -42,8 +119,17 @@ public class AdminController {
     private PasswordEncoder passwordEncoder;
 
     @GetMapping("/peers")
-    public ResponseEntity<Map<String, Peer>> getActivePeers() {
-        return ResponseEntity.ok(signalController.getPeers());
+    public ResponseEntity<byte[]> getActivePeers(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return CachedResponses.of(presenceService.encodedPeers(), ifNoneMatch);
+    }
+
+    @GetMapping("/peers/directory")
+    public ResponseEntity<PeerPage> searchActivePeers(@RequestParam(required = false) String q,
+                                                      @RequestParam(required = false) String platform,
+                                                      @RequestParam(required = false) String status,
+                                                      @RequestParam(required = false) String cursor,
+                                                      @RequestParam(defaultValue = "50") int limit) {
+        return ResponseEntity.ok(presenceService.getDirectory().search(q, platform, status, cursor, limit));
     }
 
     @GetMapping("/users")
@@ -129,10 +215,43 @@ public class AdminController {
         }
     }
 
+    // --- Metrics ---
+    @GetMapping("/metrics")
+    public ResponseEntity<Map<String, Object>> getMetrics() {
+        Map<String, Object> metrics = new java.util.LinkedHashMap<>();
+        metrics.put("executors", channelExecutors.getStats());
+        metrics.put("iceCoalescing", iceCoalescer.getStats());
+        metrics.put("outboundQueues", outboundQueuePolicy.getStats());
+        metrics.put("compression", compressionUpgradeStrategy.getStats());
+        metrics.put("rateLimit", rateLimitInterceptor.getStats());
+        metrics.put("mailbox", mailbox.getStats());
+        metrics.put("channelCatalogue", channelRegistry.getCatalogue().getStats());
+        metrics.put("channelMembership", channelMembership.getStats());
+        metrics.put("channelHistory", channelHistory.getStats());
+        metrics.put("announcements", announcements.getStats());
+        metrics.put("calls", callRegistry.getStats());
+        metrics.put("cluster", clusterReplicator.getStats());
+        metrics.put("liveness", peerLiveness.getStats());
+        metrics.put("uploads", resumableUploads.getStats());
+        metrics.put("fileMetadata", fileMetadataCache.getStats());
+        metrics.put("channelFiles", channelFileStore.getStats());
+        metrics.put("fileExpiry", fileCleanupService.getStats());
+        metrics.put("storage", storageQuotas.getStats());
+        return ResponseEntity.ok(metrics);
+    }
+
     // --- Channels Management ---
     @GetMapping("/channels")
-    public ResponseEntity<Map<String, PublicChannel>> getAllChannels() {
-        return ResponseEntity.ok(signalController.getChannels());
+    public ResponseEntity<byte[]> getAllChannels(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return CachedResponses.of(channelRegistry.encoded(), ifNoneMatch);
+    }
+
+    @GetMapping("/channels/{id}/members")
+    public ResponseEntity<?> getChannelMembers(@PathVariable String id) {
+        return ResponseEntity.ok(Map.of(
+                "channelId", id,
+                "subscriptions", channelMembership.getSubscriptionCount(id),
+                "members", channelMembership.getMembers(id)));
     }
 
     @PostMapping("/channels")
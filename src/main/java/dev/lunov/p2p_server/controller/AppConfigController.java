@@ -1,9 +1,9 @@
 package dev.lunov.p2p_server.controller;
 
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
+import dev.lunov.p2p_server.service.FileMetadataCache;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -11,10 +11,13 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -26,6 +29,11 @@ public class AppConfigController {
     private String releaseNotes = "Initial release.";
     private String downloadUrl = "";
     
+    private static final String APK_CONTENT_TYPE = "application/vnd.android.package-archive";
+
+    @Autowired
+    private FileMetadataCache fileMetadataCache;
+
     private final Path uploadDir = Paths.get("uploads");
 
     public AppConfigController() {
@@ -48,20 +56,13 @@ public class AppConfigController {
     }
 
     @GetMapping("/download-apk")
-    public ResponseEntity<Resource> downloadApk() {
-        try {
-            Path file = uploadDir.resolve("app.apk");
-            if (!Files.exists(file)) {
-                return ResponseEntity.notFound().build();
-            }
-            Resource resource = new UrlResource(file.toUri());
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"app.apk\"")
-                    .contentType(MediaType.parseMediaType("application/vnd.android.package-archive"))
-                    .body(resource);
-        } catch (Exception e) {
-            return ResponseEntity.internalServerError().build();
+    public void downloadApk(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        FileMetadataCache.FileInfo apk = fileMetadataCache.get(uploadDir.resolve("app.apk"));
+        if (apk == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
         }
+        FileResponses.serve(apk.withContentType(APK_CONTENT_TYPE), "app.apk", request, response);
     }
 
     public void updateConfig(String version, String notes, String externalUrl, MultipartFile apkFile) throws IOException {
@@ -70,7 +71,11 @@ public class AppConfigController {
         
         if (apkFile != null && !apkFile.isEmpty()) {
             Path targetFile = uploadDir.resolve("app.apk");
-            Files.copy(apkFile.getInputStream(), targetFile, StandardCopyOption.REPLACE_EXISTING);
+            MessageDigest digest = FileMetadataCache.sha256();
+            try (InputStream in = new DigestInputStream(apkFile.getInputStream(), digest)) {
+                Files.copy(in, targetFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            fileMetadataCache.put(targetFile, digest.digest(), APK_CONTENT_TYPE);
             this.downloadUrl = "/api/config/download-apk";
         } else if (externalUrl != null && !externalUrl.trim().isEmpty()) {
             this.downloadUrl = externalUrl;
@@ -0,0 +1,62 @@
+package dev.lunov.p2p_server.controller;
+
+import dev.lunov.p2p_server.service.AvatarStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@RestController
+@RequestMapping("/api/avatars")
+public class AvatarController {
+
+    @Autowired
+    private AvatarStore avatarStore;
+
+    @PostMapping
+    public ResponseEntity<Map<String, String>> uploadAvatar(@RequestParam("file") MultipartFile file) {
+        if (file.isEmpty() || file.getSize() > AvatarStore.MAX_AVATAR_BYTES) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Avatar must be between 1 byte and " + AvatarStore.MAX_AVATAR_BYTES + " bytes"));
+        }
+        try {
+            return ResponseEntity.ok(Map.of("hash", avatarStore.store(file.getBytes())));
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError().body(Map.of("error", "Failed to store avatar: " + e.getMessage()));
+        }
+    }
+
+    // The hash is the content, so the ETag never changes and the response can be cached forever
+    @GetMapping("/{hash}")
+    public ResponseEntity<byte[]> getAvatar(@PathVariable String hash,
+                                            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        Path file = avatarStore.resolve(hash);
+        if (file == null) {
+            return ResponseEntity.notFound().build();
+        }
+        String etag = "\"" + hash + "\"";
+        CacheControl cacheControl = CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable();
+        if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl).build();
+        }
+        try {
+            byte[] image = Files.readAllBytes(file);
+            return ResponseEntity.ok()
+                    .eTag(etag)
+                    .cacheControl(cacheControl)
+                    .contentType(MediaType.parseMediaType(AvatarStore.contentType(image)))
+                    .body(image);
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package dev.lunov.p2p_server.controller;
+
+import dev.lunov.p2p_server.service.EncodedPayload;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+final class CachedResponses {
+
+    private CachedResponses() {
+    }
+
+    static ResponseEntity<byte[]> of(EncodedPayload payload, String ifNoneMatch) {
+        if (payload.matches(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(payload.etag()).cacheControl(CacheControl.noCache()).build();
+        }
+        return ResponseEntity.ok()
+                .eTag(payload.etag())
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(payload.bytes());
+    }
+}
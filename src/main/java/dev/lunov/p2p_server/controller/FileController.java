@@ -1,18 +1,25 @@
 package dev.lunov.p2p_server.controller;
 
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
-import org.springframework.http.HttpHeaders;
+import dev.lunov.p2p_server.dto.UploadStatus;
+import dev.lunov.p2p_server.service.ChannelFileStore;
+import dev.lunov.p2p_server.service.ChannelRegistry;
+import dev.lunov.p2p_server.service.FileMetadataCache;
+import dev.lunov.p2p_server.service.ResumableUploads;
+import dev.lunov.p2p_server.service.StorageQuotas;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.net.URI;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
@@ -21,81 +28,159 @@ import java.util.UUID;
 @RequestMapping("/api/files")
 public class FileController {
 
-    private final Path uploadDir = Paths.get("uploads", "channels");
+    public static final String UPLOAD_OFFSET = "Upload-Offset";
+    public static final String UPLOAD_LENGTH = "Upload-Length";
 
-    public FileController() {
-        try {
-            if (!Files.exists(uploadDir)) {
-                Files.createDirectories(uploadDir);
-            }
-        } catch (IOException e) {
-            throw new RuntimeException("Could not initialize file storage directory", e);
-        }
-    }
+    @Autowired
+    private ResumableUploads resumableUploads;
+
+    @Autowired
+    private ChannelFileStore channelFileStore;
+
+    @Autowired
+    private FileMetadataCache fileMetadataCache;
+
+    @Autowired
+    private StorageQuotas storageQuotas;
+
+    @Autowired
+    private ChannelRegistry channelRegistry;
 
-    @PostMapping("/upload")
-    public ResponseEntity<Map<String, String>> uploadFile(@RequestParam("file") MultipartFile file) {
-        if (file.isEmpty()) {
-            return ResponseEntity.badRequest().body(Map.of("error", "Failed to store empty file."));
+    // The multipart body is parsed lazily (spring.servlet.multipart.resolve-lazily), so the
+    // uploader's quota is charged from Content-Length before any of it is read
+    @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<Map<String, String>> uploadFile(MultipartHttpServletRequest request) {
+        long length = request.getContentLengthLong();
+        if (length < 0) {
+            return ResponseEntity.status(HttpStatus.LENGTH_REQUIRED).body(Map.of("error", "Content-Length is required"));
         }
-        
+        StorageQuotas.Reservation reservation = null;
         try {
-            String originalFilename = file.getOriginalFilename();
-            String extension = "";
-            if (originalFilename != null && originalFilename.contains(".")) {
-                extension = originalFilename.substring(originalFilename.lastIndexOf("."));
+            reservation = storageQuotas.reserve(currentUser(), null, length);
+            MultipartFile file = request.getFile("file");
+            String channelId = request.getParameter("channelId");
+            if (file == null || file.isEmpty()) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Failed to store empty file."));
             }
-            
-            String fileId = UUID.randomUUID().toString();
-            String storedFilename = fileId + extension;
-            Path destinationFile = uploadDir.resolve(Paths.get(storedFilename))
-                    .normalize().toAbsolutePath();
-            
-            if (!destinationFile.getParent().equals(uploadDir.toAbsolutePath())) {
-                return ResponseEntity.badRequest().body(Map.of("error", "Cannot store file outside current directory."));
+            if (channelId != null && channelRegistry.get(channelId) == null) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Unknown channel: " + channelId));
             }
-
-            Files.copy(file.getInputStream(), destinationFile, StandardCopyOption.REPLACE_EXISTING);
+            // Now that the channel is known, hold the file's own size against both quotas
+            StorageQuotas.Reservation byLength = reservation;
+            reservation = null;
+            storageQuotas.release(byLength);
+            reservation = storageQuotas.reserve(currentUser(), channelId, file.getSize());
+            String storedFilename = UUID.randomUUID() + ChannelFileStore.extensionOf(file.getOriginalFilename());
+            channelFileStore.store(file.getInputStream(), storedFilename, currentUser(), channelId);
             
             Map<String, String> response = new HashMap<>();
             response.put("fileId", storedFilename);
             return ResponseEntity.ok(response);
             
+        } catch (StorageQuotas.QuotaExceededException e) {
+            return quotaExceeded(e);
         } catch (IOException e) {
             return ResponseEntity.internalServerError().body(Map.of("error", "Failed to store file: " + e.getMessage()));
+        } finally {
+            if (reservation != null) {
+                storageQuotas.release(reservation);
+            }
         }
     }
 
-    @GetMapping("/{fileId}")
-    public ResponseEntity<Resource> downloadFile(@PathVariable String fileId) {
+    // --- Resumable uploads ---
+    // POST with Upload-Length, then PATCH chunks with Upload-Offset; after a dropped connection,
+    // HEAD returns the offset to continue from
+
+    @PostMapping("/uploads")
+    public ResponseEntity<?> createUpload(@RequestHeader(UPLOAD_LENGTH) long length,
+                                          @RequestParam(required = false) String filename,
+                                          @RequestParam(required = false) String channelId) {
+        // A malformed length is the client's mistake; only a length over the maximum is 413
+        if (length <= 0) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Upload-Length must be positive"));
+        }
+        if (channelId != null && channelRegistry.get(channelId) == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Unknown channel: " + channelId));
+        }
         try {
-            Path file = uploadDir.resolve(fileId).normalize();
-            Resource resource = new UrlResource(file.toUri());
-
-            if (resource.exists() || resource.isReadable()) {
-                String contentType = Files.probeContentType(file);
-                if (contentType == null) {
-                    contentType = "application/octet-stream";
-                }
-
-                return ResponseEntity.ok()
-                        .contentType(MediaType.parseMediaType(contentType))
-                        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + resource.getFilename() + "\"")
-                        .body(resource);
-            } else {
+            UploadStatus status = resumableUploads.create(length, filename, currentUser(), channelId);
+            return ResponseEntity.created(URI.create("/api/files/uploads/" + status.uploadId()))
+                    .header(UPLOAD_OFFSET, "0")
+                    .body(status);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.CONTENT_TOO_LARGE).body(Map.of("error", e.getMessage()));
+        } catch (StorageQuotas.QuotaExceededException e) {
+            return quotaExceeded(e);
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError().body(Map.of("error", "Failed to create upload: " + e.getMessage()));
+        }
+    }
+
+    @RequestMapping(value = "/uploads/{uploadId}", method = RequestMethod.HEAD)
+    public ResponseEntity<Void> getUploadOffset(@PathVariable String uploadId) {
+        UploadStatus status = resumableUploads.status(uploadId, currentUser());
+        if (status == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noStore())
+                .header(UPLOAD_OFFSET, String.valueOf(status.offset()))
+                .header(UPLOAD_LENGTH, String.valueOf(status.length()))
+                .build();
+    }
+
+    // The body is read straight from the request, not through a message converter
+    @PatchMapping("/uploads/{uploadId}")
+    public ResponseEntity<?> appendUpload(@PathVariable String uploadId,
+                                          @RequestHeader(UPLOAD_OFFSET) long offset,
+                                          HttpServletRequest request) {
+        try {
+            UploadStatus status = resumableUploads.append(uploadId, currentUser(), offset, request.getInputStream());
+            if (status == null) {
                 return ResponseEntity.notFound().build();
             }
+            return ResponseEntity.ok().header(UPLOAD_OFFSET, String.valueOf(status.offset())).body(status);
+        } catch (StorageQuotas.QuotaExceededException e) {
+            return quotaExceeded(e);
+        } catch (IllegalStateException e) {
+            UploadStatus status = resumableUploads.status(uploadId, currentUser());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .header(UPLOAD_OFFSET, status == null ? "0" : String.valueOf(status.offset()))
+                    .body(Map.of("error", e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         } catch (IOException e) {
-            return ResponseEntity.internalServerError().build();
+            // Usually the client went away; what arrived is kept and HEAD reports it
+            return ResponseEntity.internalServerError().body(Map.of("error", "Upload interrupted: " + e.getMessage()));
         }
     }
 
+    @GetMapping("/{fileId}")
+    public void downloadFile(@PathVariable String fileId, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ChannelFileStore.StoredFile stored = channelFileStore.get(fileId);
+        FileMetadataCache.FileInfo info = stored == null ? null : fileMetadataCache.get(channelFileStore.blobPath(stored.hash()));
+        if (info == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        FileResponses.serve(info.withContentType(stored.contentType()), fileId, request, response);
+    }
+
+    private static String currentUser() {
+        return SecurityContextHolder.getContext().getAuthentication().getName();
+    }
+
+    // 507 when the server is short of disk, 413 when the user or channel is over quota
+    private static ResponseEntity<Map<String, String>> quotaExceeded(StorageQuotas.QuotaExceededException e) {
+        HttpStatus status = e.isLowDisk() ? HttpStatus.INSUFFICIENT_STORAGE : HttpStatus.CONTENT_TOO_LARGE;
+        return ResponseEntity.status(status).body(Map.of("error", e.getMessage()));
+    }
+
     @DeleteMapping("/{fileId}")
     public ResponseEntity<?> deleteFile(@PathVariable String fileId) {
         try {
-            Path file = uploadDir.resolve(fileId).normalize();
-            if (Files.exists(file)) {
-                Files.delete(file);
+            if (channelFileStore.delete(fileId)) {
                 return ResponseEntity.ok().build();
             } else {
                 return ResponseEntity.notFound().build();
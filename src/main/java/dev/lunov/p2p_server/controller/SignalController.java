@@ -1,24 +1,51 @@
 package dev.lunov.p2p_server.controller;
 
+import dev.lunov.p2p_server.dto.ChannelHistoryPage;
+import dev.lunov.p2p_server.dto.ChannelPage;
+import dev.lunov.p2p_server.dto.PeerPage;
 import dev.lunov.p2p_server.model.CallAnswer;
 import dev.lunov.p2p_server.model.CallRequest;
+import dev.lunov.p2p_server.model.ClusterMessage;
+import dev.lunov.p2p_server.model.MailboxAck;
 import dev.lunov.p2p_server.model.Peer;
 import dev.lunov.p2p_server.model.PublicChannel;
+import dev.lunov.p2p_server.service.Announcements;
+import dev.lunov.p2p_server.service.AvatarStore;
+import dev.lunov.p2p_server.service.CallRegistry;
+import dev.lunov.p2p_server.service.ChannelCatalogue;
+import dev.lunov.p2p_server.service.ChannelHistory;
+import dev.lunov.p2p_server.service.ChannelRegistry;
+import dev.lunov.p2p_server.service.ClusterBus;
+import dev.lunov.p2p_server.service.EncodedPayload;
+import dev.lunov.p2p_server.service.IceCoalescer;
+import dev.lunov.p2p_server.service.Mailbox;
+import dev.lunov.p2p_server.service.PeerLiveness;
+import dev.lunov.p2p_server.service.PresenceService;
+import dev.lunov.p2p_server.service.SignalRouter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.Message;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.annotation.SubscribeMapping;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 @Controller
@@ -27,84 +54,186 @@ public class SignalController {
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
 
-    private final Map<String, Peer> peers = new ConcurrentHashMap<>();
-    private final Map<String, String> sessionToPeer = new ConcurrentHashMap<>();
-    private final Map<String, PublicChannel> publicChannels = new ConcurrentHashMap<>();
+    @Autowired
+    private PresenceService presenceService;
+
+    @Autowired
+    private AvatarStore avatarStore;
+
+    @Autowired
+    private ChannelRegistry channelRegistry;
+
+    @Autowired
+    private ChannelHistory channelHistory;
+
+    @Autowired
+    private SignalRouter signalRouter;
+
+    @Autowired
+    private IceCoalescer iceCoalescer;
+
+    @Autowired
+    private Mailbox mailbox;
+
+    @Autowired
+    private Announcements announcements;
+
+    @Autowired
+    private CallRegistry callRegistry;
+
+    @Autowired
+    private ClusterBus clusterBus;
+
+    @Autowired
+    private PeerLiveness peerLiveness;
+
+    private static final String CHANNEL_CONTENT_TYPE = "text/plain;charset=UTF-8";
+
     private final Logger logger = Logger.getLogger(SignalController.class.getName());
 
     @MessageMapping("/register")
-    @SendTo("/topic/peers")
-    public Map<String, Peer> register(Peer peer, @Header("simpSessionId") String sessionId) {
-        peers.put(peer.id(), peer);
-        sessionToPeer.put(sessionId, peer.id());
+    public void register(Peer peer, @Header("simpSessionId") String sessionId) {
+        if (peer.avatarBase64() != null && !peer.avatarBase64().isEmpty()) {
+            try {
+                peer = peer.withAvatarHash(avatarStore.storeBase64(peer.avatarBase64()));
+            } catch (Exception e) {
+                logger.warning("Dropping avatar of peer " + peer.id() + ": " + e.getMessage());
+                peer = peer.withAvatarHash(peer.avatarHash());
+            }
+        }
+        presenceService.register(peer, sessionId);
+        peerLiveness.track(sessionId, peer.id());
         logger.info("Registered peer: " + peer.id() + " at " + peer.ip() + " (session: " + sessionId + ")");
-        return peers;
+        // Otherwise the mailbox is drained once the peer subscribes to its message topic
+        if (signalRouter.hasRoute("/topic/message/" + peer.id())) {
+            mailbox.drain(peer.id());
+        }
+    }
+
+    // Clients subscribe to /topic/presence for deltas, then to /app/presence for the snapshot
+    // they apply them on. Re-subscribing here is also the resync path after a version gap.
+    @SubscribeMapping("/presence")
+    public EncodedPayload presenceSnapshot() {
+        return presenceService.encodedSnapshot();
     }
 
     @MessageMapping("/call/{targetId}")
-    public void call(@DestinationVariable String targetId, CallRequest request) {
-        Peer target = peers.get(targetId);
+    public void call(@DestinationVariable String targetId, CallRequest request,
+                     @Header("simpSessionId") String sessionId) {
+        // Call frames act for the peer the sending session registered, whatever ids the payload carries
+        if (request.callerId() == null || !request.callerId().equals(presenceService.peerOf(sessionId))) {
+            logger.warning("Ignoring call as " + request.callerId() + " from session " + sessionId);
+            return;
+        }
+        Peer target = presenceService.getPeer(targetId);
         if (target == null) {
             logger.warning("Call failed: target " + targetId + " not found");
             return;
         }
+        // Calls are tracked by the node both parties are connected to; calls across nodes are relayed untracked
+        CallRegistry.Decision decision = presenceService.ownerOf(targetId) != null
+                ? CallRegistry.Decision.RELAY : callRegistry.call(request.callerId(), targetId);
+        if (decision != CallRegistry.Decision.RELAY) {
+            logger.info("Not forwarding call from " + request.callerId() + " to " + targetId + ": " + decision);
+            return;
+        }
         logger.info("Forwarding call from " + request.callerId() + " to " + targetId);
-        messagingTemplate.convertAndSend("/topic/call/" + targetId, request);
+        signalRouter.send("/topic/call/" + targetId, request);
     }
 
     @MessageMapping("/answer")
-    public void answer(CallAnswer answer) {
-        messagingTemplate.convertAndSend("/topic/answer/" + answer.callerId(), answer);
+    public void answer(CallAnswer answer, @Header("simpSessionId") String sessionId) {
+        String calleeId = presenceService.peerOf(sessionId);
+        if (calleeId == null) {
+            logger.warning("Ignoring answer to " + answer.callerId() + " from unregistered session " + sessionId);
+            return;
+        }
+        if (presenceService.ownerOf(answer.callerId()) == null
+                && callRegistry.answer(answer.callerId(), calleeId, answer.accepted()) == CallRegistry.Decision.STALE) {
+            logger.info("Dropping answer from " + calleeId + " to " + answer.callerId() + ": no ringing call");
+            return;
+        }
+        signalRouter.send("/topic/answer/" + answer.callerId(), answer);
     }
 
     @MessageMapping("/hangup/{targetId}")
-    public void hangup(@DestinationVariable String targetId, String callerId) {
+    public void hangup(@DestinationVariable String targetId, String callerId,
+                       @Header("simpSessionId") String sessionId) {
+        if (callerId == null || !callerId.equals(presenceService.peerOf(sessionId))) {
+            logger.warning("Ignoring hangup as " + callerId + " from session " + sessionId);
+            return;
+        }
         logger.info("Hangup from " + callerId + " to " + targetId);
-        messagingTemplate.convertAndSend("/topic/hangup/" + targetId, callerId);
+        callRegistry.hangup(callerId, targetId);
+        signalRouter.send("/topic/hangup/" + targetId, callerId);
     }
 
     // --- WebRTC signaling ---
 
     @MessageMapping("/webrtc/sdp/{targetId}")
-    public void forwardSdp(@DestinationVariable String targetId, String sdpJson) {
+    public void forwardSdp(@DestinationVariable String targetId, Message<byte[]> sdp,
+                           @Header("simpSessionId") String sessionId) {
         logger.info("Forwarding SDP to " + targetId);
-        messagingTemplate.convertAndSend("/topic/webrtc/sdp/" + targetId, sdpJson);
+        callRegistry.onSdp(presenceService.peerOf(sessionId), targetId);
+        signalRouter.relay("/topic/webrtc/sdp/" + targetId, sdp);
     }
 
     @MessageMapping("/webrtc/ice/{targetId}")
-    public void forwardIce(@DestinationVariable String targetId, String iceJson) {
+    public void forwardIce(@DestinationVariable String targetId, Message<byte[]> ice) {
         logger.info("Forwarding ICE candidate to " + targetId);
-        messagingTemplate.convertAndSend("/topic/webrtc/ice/" + targetId, iceJson);
+        relayIce("/topic/webrtc/ice/" + targetId, ice);
+    }
+
+    // Coalesced batches are JSON arrays, so binary candidates bypass the coalescer
+    private void relayIce(String destination, Message<byte[]> ice) {
+        if (SignalRouter.isBinary(ice)) {
+            signalRouter.relay(destination, ice);
+        } else {
+            iceCoalescer.relay(destination, new String(ice.getPayload(), StandardCharsets.UTF_8));
+        }
     }
 
     // --- Lifecycle ---
 
+    // Only the session a peer registered from can sign it off
     @MessageMapping("/disconnect")
-    @SendTo("/topic/peers")
-    public Map<String, Peer> disconnect(String peerId) {
-        peers.remove(peerId);
+    public void disconnect(String peerId, @Header("simpSessionId") String sessionId) {
+        if (peerId == null || !peerId.equals(presenceService.peerOf(sessionId))) {
+            logger.warning("Ignoring disconnect of " + peerId + " from session " + sessionId);
+            return;
+        }
+        presenceService.removeSession(sessionId);
+        callRegistry.leave(peerId);
         logger.info("Disconnected peer: " + peerId);
-        return peers;
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        String destination = (String) event.getMessage().getHeaders().get("simpDestination");
+        if (destination != null && destination.startsWith("/topic/message/")) {
+            String peerId = SignalRouter.peerIdOf(destination);
+            if (presenceService.isOnline(peerId)) {
+                mailbox.drain(peerId);
+            }
+        }
     }
 
     @EventListener
     public void onDisconnect(SessionDisconnectEvent event) {
-        String sessionId = event.getSessionId();
-        String peerId = sessionToPeer.remove(sessionId);
+        signalRouter.removeSession(event.getSessionId());
+        String peerId = presenceService.removeSession(event.getSessionId());
         if (peerId != null) {
-            peers.remove(peerId);
+            callRegistry.leave(peerId);
             logger.info("Auto-removed peer: " + peerId + " (session disconnected)");
-            messagingTemplate.convertAndSend("/topic/peers", peers);
         }
     }
 
-    @Scheduled(fixedRate = 5000)
+    // Fallback for clients that still consume the full map; presence changes go out as deltas.
+    // Channels are not rebroadcast: older clients still get the full /topic/channels map on each change.
+    @Scheduled(fixedRateString = "${presence.full-broadcast-interval-ms:30000}")
     public void broadcastPeers() {
-        if (!peers.isEmpty()) {
-            messagingTemplate.convertAndSend("/topic/peers", peers);
-        }
-        if (!publicChannels.isEmpty()) {
-            messagingTemplate.convertAndSend("/topic/channels", publicChannels);
+        if (!presenceService.getPeers().isEmpty()) {
+            messagingTemplate.convertAndSend("/topic/peers", presenceService.encodedPeers());
         }
     }
 
@@ -112,92 +241,140 @@ public class SignalController {
     // --- Messaging relay ---
 
     @MessageMapping("/message/{targetId}")
-    public void relayMessage(@DestinationVariable String targetId, String encryptedMessage) {
+    public void relayMessage(@DestinationVariable String targetId, Message<byte[]> encryptedMessage) {
+        if (!signalRouter.relay("/topic/message/" + targetId, encryptedMessage)) {
+            long seq = mailbox.append(targetId, encryptedMessage.getPayload(), SignalRouter.isBinary(encryptedMessage));
+            logger.info("Target " + targetId + " is offline, stored message #" + seq + " in its mailbox");
+            return;
+        }
         logger.info("Relaying message to " + targetId);
-        messagingTemplate.convertAndSend("/topic/message/" + targetId, encryptedMessage);
+    }
+
+    @MessageMapping("/mailbox/ack")
+    public void ackMailbox(MailboxAck ack, @Header("simpSessionId") String sessionId) {
+        String peerId = presenceService.peerOf(sessionId);
+        if (peerId == null || !peerId.equals(ack.peerId())) {
+            logger.warning("Ignoring mailbox ack for " + ack.peerId() + " from session " + sessionId);
+            return;
+        }
+        mailbox.ack(peerId, ack.seq());
     }
 
     // --- Public Channels ---
 
     @MessageMapping("/channel/register")
     @SendTo("/topic/channels")
-    public Map<String, PublicChannel> registerChannel(PublicChannel channel) {
-        publicChannels.put(channel.id(), channel);
+    public EncodedPayload registerChannel(PublicChannel channel) {
+        channelRegistry.put(channel);
         logger.info("Registered public channel: " + channel.name() + " (id: " + channel.id() + ")");
-        return publicChannels;
+        return channelRegistry.encoded();
     }
 
     @MessageMapping("/channel/message/{channelId}")
     public void relayChannelMessage(@DestinationVariable String channelId, String messageJson) {
         logger.info("Relaying channel message to channel: " + channelId);
-        messagingTemplate.convertAndSend("/topic/channel/" + channelId, messageJson);
+        // Other nodes publish it to their own subscribers (see ClusterReplicator)
+        clusterBus.publish(ClusterMessage.frame(ClusterMessage.Type.PUBLISH, clusterBus.getNodeId(),
+                "/topic/channel/" + channelId, CHANNEL_CONTENT_TYPE, Map.of(),
+                messageJson.getBytes(StandardCharsets.UTF_8)));
+        if (channelRegistry.get(channelId) == null) {
+            messagingTemplate.convertAndSend("/topic/channel/" + channelId, messageJson);
+            return;
+        }
+        long seq = channelHistory.append(channelId, messageJson);
+        messagingTemplate.convertAndSend("/topic/channel/" + channelId, messageJson,
+                Map.<String, Object>of("channel-seq", String.valueOf(seq)));
     }
 
     @GetMapping("/channels")
     @ResponseBody
-    public Map<String, PublicChannel> getChannels() {
-        return publicChannels;
+    public ResponseEntity<byte[]> getChannels(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return CachedResponses.of(channelRegistry.encoded(), ifNoneMatch);
+    }
+
+    // Clients page through the catalogue once, then follow ChannelRegistry.DELTA_TOPIC from the page's version
+    @GetMapping("/channels/catalogue")
+    @ResponseBody
+    public ChannelPage searchChannels(@RequestParam(required = false) String q,
+                                      @RequestParam(required = false) List<String> tag,
+                                      @RequestParam(defaultValue = "name") String sort,
+                                      @RequestParam(required = false) String cursor,
+                                      @RequestParam(defaultValue = "50") int limit) {
+        return channelRegistry.getCatalogue().search(q, tag, ChannelCatalogue.Sort.of(sort), cursor, limit,
+                channelRegistry.getVersion());
+    }
+
+    // Late joiners page through recent messages, then follow channel-seq on the live topic
+    @GetMapping("/channels/{channelId}/history")
+    @ResponseBody
+    public ChannelHistoryPage getChannelHistory(@PathVariable String channelId,
+                                                @RequestParam(defaultValue = "0") long since,
+                                                @RequestParam(defaultValue = "50") int limit) {
+        return channelHistory.since(channelId, since, limit);
     }
 
     public void addPublicChannel(PublicChannel channel) {
-        publicChannels.put(channel.id(), channel);
+        channelRegistry.put(channel);
         logger.info("Admin registered public channel: " + channel.name() + " (id: " + channel.id() + ")");
-        messagingTemplate.convertAndSend("/topic/channels", publicChannels);
+        messagingTemplate.convertAndSend("/topic/channels", channelRegistry.encoded());
     }
 
     public void removePublicChannel(String id) {
-        if (publicChannels.remove(id) != null) {
+        if (channelRegistry.remove(id)) {
+            channelHistory.remove(id);
             logger.info("Admin removed public channel: " + id);
-            messagingTemplate.convertAndSend("/topic/channels", publicChannels);
+            messagingTemplate.convertAndSend("/topic/channels", channelRegistry.encoded());
         }
     }
 
     public void broadcastSystemNotification(String text) {
-        logger.info("Broadcasting system notification: " + text);
-        try {
-            java.util.Map<String, Object> sysMsg = new java.util.HashMap<>();
-            sysMsg.put("senderId", "system_admin");
-            sysMsg.put("senderName", "Системне сповіщення");
-            sysMsg.put("text", text);
-            sysMsg.put("type", "text");
-            sysMsg.put("timestamp", System.currentTimeMillis());
-            
-            String jsonPayload = new com.fasterxml.jackson.databind.ObjectMapper().writeValueAsString(sysMsg);
-            for (String peerId : peers.keySet()) {
-                messagingTemplate.convertAndSend("/topic/message/" + peerId, jsonPayload);
-            }
-        } catch (Exception e) {
-            logger.warning("Failed to broadcast system notification: " + e.getMessage());
-        }
+        long id = announcements.broadcast(text);
+        logger.info("Broadcast system notification #" + id + ": " + text);
     }
 
     // --- File transfer signaling ---
 
     @MessageMapping("/file/request/{targetId}")
-    public void fileRequest(@DestinationVariable String targetId, String metadataJson) {
+    public void fileRequest(@DestinationVariable String targetId, Message<byte[]> metadata) {
         logger.info("Relaying file request to " + targetId);
-        messagingTemplate.convertAndSend("/topic/file/request/" + targetId, metadataJson);
+        signalRouter.relay("/topic/file/request/" + targetId, metadata);
     }
 
     @MessageMapping("/file/accept/{targetId}")
-    public void fileAccept(@DestinationVariable String targetId, String responseJson) {
+    public void fileAccept(@DestinationVariable String targetId, Message<byte[]> response) {
         logger.info("Relaying file accept to " + targetId);
-        messagingTemplate.convertAndSend("/topic/file/accept/" + targetId, responseJson);
+        signalRouter.relay("/topic/file/accept/" + targetId, response);
     }
 
     @MessageMapping("/file/sdp/{targetId}")
-    public void fileSdp(@DestinationVariable String targetId, String sdpJson) {
-        messagingTemplate.convertAndSend("/topic/file/sdp/" + targetId, sdpJson);
+    public void fileSdp(@DestinationVariable String targetId, Message<byte[]> sdp) {
+        signalRouter.relay("/topic/file/sdp/" + targetId, sdp);
     }
 
     @MessageMapping("/file/ice/{targetId}")
-    public void fileIce(@DestinationVariable String targetId, String iceJson) {
-        messagingTemplate.convertAndSend("/topic/file/ice/" + targetId, iceJson);
+    public void fileIce(@DestinationVariable String targetId, Message<byte[]> ice) {
+        relayIce("/topic/file/ice/" + targetId, ice);
     }
 
     @GetMapping("/peers")
     @ResponseBody
-    public Map<String, Peer> getPeers() {
-        return peers;
+    public ResponseEntity<byte[]> getPeers(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return CachedResponses.of(presenceService.encodedPeers(), ifNoneMatch);
+    }
+
+    @GetMapping("/peers/directory")
+    @ResponseBody
+    public PeerPage searchPeers(@RequestParam(required = false) String q,
+                                @RequestParam(required = false) String platform,
+                                @RequestParam(required = false) String status,
+                                @RequestParam(required = false) String cursor,
+                                @RequestParam(defaultValue = "50") int limit) {
+        return presenceService.getDirectory().search(q, platform, status, cursor, limit);
+    }
+
+    @GetMapping("/peers/snapshot")
+    @ResponseBody
+    public ResponseEntity<byte[]> getPeersSnapshot(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return CachedResponses.of(presenceService.encodedSnapshot(), ifNoneMatch);
     }
 }
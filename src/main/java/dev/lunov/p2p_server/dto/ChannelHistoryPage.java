@@ -0,0 +1,13 @@
+package dev.lunov.p2p_server.dto;
+
+import dev.lunov.p2p_server.model.ChannelMessage;
+
+import java.util.List;
+
+/**
+ * @param next pass as {@code since} to fetch the following page
+ * @param gap  {@code true} if some messages after {@code since} are missing: evicted from the
+ *             ring, or too large to be kept
+ */
+public record ChannelHistoryPage(List<ChannelMessage> messages, long next, boolean gap) {
+}
@@ -0,0 +1,11 @@
+package dev.lunov.p2p_server.dto;
+
+import dev.lunov.p2p_server.model.ChannelSummary;
+
+import java.util.List;
+
+/**
+ * @param version the catalogue version the page was read at; deltas after it apply on top
+ */
+public record ChannelPage(List<ChannelSummary> channels, String nextCursor, long version) {
+}
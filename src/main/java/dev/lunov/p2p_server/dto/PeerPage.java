@@ -0,0 +1,8 @@
+package dev.lunov.p2p_server.dto;
+
+import dev.lunov.p2p_server.model.Peer;
+
+import java.util.List;
+
+public record PeerPage(List<Peer> peers, String nextCursor) {
+}
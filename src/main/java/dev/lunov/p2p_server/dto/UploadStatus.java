@@ -0,0 +1,8 @@
+package dev.lunov.p2p_server.dto;
+
+/**
+ * @param offset bytes received so far; the next chunk must start here
+ * @param fileId set once all {@code length} bytes arrived, for {@code GET /api/files/{fileId}}
+ */
+public record UploadStatus(String uploadId, long offset, long length, String fileId) {
+}
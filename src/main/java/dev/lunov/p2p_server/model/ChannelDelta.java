@@ -0,0 +1,12 @@
+package dev.lunov.p2p_server.model;
+
+public record ChannelDelta(
+        long version,
+        Type type,
+        String channelId,
+        ChannelSummary channel
+) {
+    public enum Type {
+        ADD, UPDATE, REMOVE
+    }
+}
@@ -0,0 +1,4 @@
+package dev.lunov.p2p_server.model;
+
+public record ChannelMessage(long seq, long sentAt, String message) {
+}
@@ -0,0 +1,9 @@
+package dev.lunov.p2p_server.model;
+
+import java.util.List;
+
+/**
+ * A catalogue entry: a {@link PublicChannel} with its tags parsed and its current subscriber count.
+ */
+public record ChannelSummary(String id, String name, List<String> tags, String creatorId, long subscribers) {
+}
@@ -0,0 +1,37 @@
+package dev.lunov.p2p_server.model;
+
+import java.util.Map;
+
+// State messages carry a peer or channel as JSON under key; DELIVER and PUBLISH carry a
+// STOMP frame body for destination on the receiving node.
+public record ClusterMessage(
+        Type type,
+        String sourceNode,
+        String key,
+        String destination,
+        String contentType,
+        Map<String, String> headers,
+        byte[] payload
+) {
+    public enum Type {
+        /** A node joined and asks the others for their peers and channels */
+        HELLO,
+        /** A node is shutting down; its peers are gone */
+        NODE_DOWN,
+        PEER_UP, PEER_DOWN,
+        CHANNEL_PUT, CHANNEL_REMOVE,
+        /** A frame for a peer connected to the receiving node */
+        DELIVER,
+        /** A frame for the subscribers of a topic on every node */
+        PUBLISH
+    }
+
+    public static ClusterMessage state(Type type, String sourceNode, String key, byte[] payload) {
+        return new ClusterMessage(type, sourceNode, key, null, null, Map.of(), payload);
+    }
+
+    public static ClusterMessage frame(Type type, String sourceNode, String destination, String contentType,
+                                       Map<String, String> headers, byte[] payload) {
+        return new ClusterMessage(type, sourceNode, null, destination, contentType, headers, payload);
+    }
+}
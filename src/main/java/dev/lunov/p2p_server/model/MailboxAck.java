@@ -0,0 +1,7 @@
+package dev.lunov.p2p_server.model;
+
+public record MailboxAck(
+        String peerId,
+        long seq
+) {
+}
@@ -1,5 +1,10 @@
 package dev.lunov.p2p_server.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// avatarBase64 is only accepted on register; the server swaps it for avatarHash
+// (see AvatarStore) so presence payloads never carry the image itself.
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public record Peer (
          String id,
          String ip,
@@ -8,6 +13,14 @@ public record Peer (
          boolean online,
          String status,
          String avatarBase64,
-         String publicKey
+         String publicKey,
+         String avatarHash
 ) {
-}
\ No newline at end of file
+    public Peer withAvatarHash(String hash) {
+        return new Peer(id, ip, platform, displayName, online, status, null, publicKey, hash);
+    }
+
+    public Peer withOnline(boolean online) {
+        return new Peer(id, ip, platform, displayName, online, status, avatarBase64, publicKey, avatarHash);
+    }
+}
@@ -0,0 +1,12 @@
+package dev.lunov.p2p_server.model;
+
+public record PresenceDelta(
+        long version,
+        Type type,
+        String peerId,
+        Peer peer
+) {
+    public enum Type {
+        JOIN, LEAVE, UPDATE
+    }
+}
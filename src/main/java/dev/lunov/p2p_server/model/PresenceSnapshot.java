@@ -0,0 +1,9 @@
+package dev.lunov.p2p_server.model;
+
+import java.util.Map;
+
+public record PresenceSnapshot(
+        long version,
+        Map<String, Peer> peers
+) {
+}
@@ -0,0 +1,50 @@
+package dev.lunov.p2p_server.security;
+
+import dev.lunov.p2p_server.service.SignalRouter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+import java.util.logging.Logger;
+
+/**
+ * Feeds per-peer SUBSCRIBE/UNSUBSCRIBE frames into {@link SignalRouter}. A subscription to the
+ * topics of a peer the session has not registered is dropped, not answered with an ERROR frame,
+ * which would close the connection; the client can subscribe again after {@code /app/register}.
+ */
+@Component
+public class PeerTopicInterceptor implements ChannelInterceptor {
+
+    // Lazy: the router needs the broker channels, which are built from the WebSocket
+    // configuration that registers this interceptor
+    @Autowired
+    @Lazy
+    private SignalRouter signalRouter;
+
+    private final Logger logger = Logger.getLogger(PeerTopicInterceptor.class.getName());
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null) {
+            return message;
+        }
+
+        if (StompCommand.SUBSCRIBE.equals(accessor.getCommand())) {
+            if (!signalRouter.subscribe(accessor.getSessionId(), accessor.getSubscriptionId(), accessor.getDestination())) {
+                logger.warning("Dropping subscription of session " + accessor.getSessionId() + " to "
+                        + accessor.getDestination() + ": the session has not registered that peer");
+                return null;
+            }
+        } else if (StompCommand.UNSUBSCRIBE.equals(accessor.getCommand())) {
+            signalRouter.unsubscribe(accessor.getSessionId(), accessor.getSubscriptionId());
+        }
+        return message;
+    }
+}
@@ -0,0 +1,187 @@
+package dev.lunov.p2p_server.security;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Rate limits STOMP SEND frames to {@code /app/**} per user (or per session before
+ * authentication) and per {@link LimitClass}. Frames over the limit are dropped rather than
+ * answered with an ERROR frame, which would close the connection.
+ * <p>
+ * Each user gets one {@link AtomicLongArray} holding a GCRA "theoretical arrival time" per
+ * class, which behaves like a token bucket of {@code burst} tokens refilled at
+ * {@code per-second}. Checking a frame is a map lookup plus one CAS and allocates nothing.
+ */
+@Component
+public class RateLimitInterceptor implements ChannelInterceptor {
+
+    public enum LimitClass {
+        CONTROL("/app/register", "/app/disconnect", "/app/channel/register"),
+        SIGNALING("/app/call/", "/app/answer", "/app/hangup/", "/app/webrtc/", "/app/file/"),
+        MESSAGING("/app/message/", "/app/channel/message/"),
+        OTHER;
+
+        // values() clones the array on every call
+        private static final LimitClass[] VALUES = values();
+
+        private final String[] prefixes;
+
+        LimitClass(String... prefixes) {
+            this.prefixes = prefixes;
+        }
+
+        static LimitClass of(String destination) {
+            for (LimitClass limitClass : VALUES) {
+                for (String prefix : limitClass.prefixes) {
+                    if (destination.startsWith(prefix)) {
+                        return limitClass;
+                    }
+                }
+            }
+            return OTHER;
+        }
+    }
+
+    private static final int CLASSES = LimitClass.values().length;
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${rate-limit.enabled:true}")
+    private boolean enabled;
+
+    private final long[] intervalNanos = new long[CLASSES];
+    private final long[] toleranceNanos = new long[CLASSES];
+
+    private final Map<String, AtomicLongArray> arrivals = new ConcurrentHashMap<>();
+    private final LongAdder[] accepted = new LongAdder[CLASSES];
+    private final LongAdder[] rejected = new LongAdder[CLASSES];
+    private final Logger logger = Logger.getLogger(RateLimitInterceptor.class.getName());
+
+    private static final Map<LimitClass, int[]> DEFAULTS = Map.of(
+            LimitClass.CONTROL, new int[]{2, 10},
+            LimitClass.SIGNALING, new int[]{200, 400},
+            LimitClass.MESSAGING, new int[]{10, 30},
+            LimitClass.OTHER, new int[]{20, 40});
+
+    @PostConstruct
+    public void init() {
+        for (LimitClass limitClass : LimitClass.values()) {
+            String prefix = "rate-limit." + limitClass.name().toLowerCase() + ".";
+            int[] defaults = DEFAULTS.get(limitClass);
+            int perSecond = environment.getProperty(prefix + "per-second", Integer.class, defaults[0]);
+            int burst = environment.getProperty(prefix + "burst", Integer.class, defaults[1]);
+            if (perSecond <= 0 || burst <= 0) {
+                throw new IllegalArgumentException(prefix + "per-second and " + prefix + "burst must be positive");
+            }
+            int i = limitClass.ordinal();
+            intervalNanos[i] = 1_000_000_000L / perSecond;
+            toleranceNanos[i] = intervalNanos[i] * (burst - 1);
+            accepted[i] = new LongAdder();
+            rejected[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (!enabled) {
+            return message;
+        }
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || !StompCommand.SEND.equals(accessor.getCommand())) {
+            return message;
+        }
+        String destination = accessor.getDestination();
+        if (destination == null || !destination.startsWith("/app/")) {
+            return message;
+        }
+
+        String key = accessor.getUser() != null ? accessor.getUser().getName() : accessor.getSessionId();
+        int i = LimitClass.of(destination).ordinal();
+        if (tryAcquire(key, i)) {
+            accepted[i].increment();
+            return message;
+        }
+        rejected[i].increment();
+        // FINE: a flooding client would otherwise flood the log as well
+        logger.fine(() -> "Rate limit exceeded by " + key + " on " + destination);
+        return null;
+    }
+
+    private boolean tryAcquire(String key, int limitClass) {
+        AtomicLongArray cells = arrivals.get(key);
+        if (cells == null) {
+            cells = arrivals.computeIfAbsent(key, k -> newCells());
+        }
+        long interval = intervalNanos[limitClass];
+        long tolerance = toleranceNanos[limitClass];
+        while (true) {
+            long now = System.nanoTime();
+            long tat = cells.get(limitClass);
+            long start = Math.max(tat, now);
+            if (start - now > tolerance) {
+                return false;
+            }
+            if (cells.compareAndSet(limitClass, tat, start + interval)) {
+                return true;
+            }
+        }
+    }
+
+    private static AtomicLongArray newCells() {
+        AtomicLongArray cells = new AtomicLongArray(CLASSES);
+        for (int i = 0; i < CLASSES; i++) {
+            cells.set(i, Long.MIN_VALUE);
+        }
+        return cells;
+    }
+
+    /**
+     * Forgets users whose buckets have all refilled. A frame racing the removal just starts
+     * from a full bucket.
+     */
+    @Scheduled(fixedRate = 60000)
+    public void evictIdle() {
+        long now = System.nanoTime();
+        arrivals.values().removeIf(cells -> {
+            for (int i = 0; i < CLASSES; i++) {
+                if (cells.get(i) != Long.MIN_VALUE && cells.get(i) - now > 0) {
+                    return false;
+                }
+            }
+            return true;
+        });
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("trackedUsers", arrivals.size());
+        for (LimitClass limitClass : LimitClass.values()) {
+            int i = limitClass.ordinal();
+            stats.put(limitClass.name().toLowerCase(), Map.of(
+                    "perSecond", 1_000_000_000L / intervalNanos[i],
+                    "burst", toleranceNanos[i] / intervalNanos[i] + 1,
+                    "accepted", accepted[i].sum(),
+                    "rejected", rejected[i].sum()));
+        }
+        return stats;
+    }
+}
@@ -28,7 +28,7 @@ public class SecurityConfig {
                 .requestMatchers("/api/auth/**").permitAll() // Login & Register open
                 .requestMatchers("/api/admin/**").hasRole("ADMIN") // Only ADMIN
                 .requestMatchers("/", "/admin.html", "/admin.css", "/admin.js", "/login.html", "/login.css", "/login.js", "/error").permitAll() // Static files handled by JS auth
-                .requestMatchers("/signal/**").permitAll() // Initial WS Handshake is open (STOMP interceptor handles auth)
+                .requestMatchers("/signal/**", "/signal-ws").permitAll() // Initial WS Handshake is open (STOMP interceptor handles auth)
                 .anyRequest().authenticated()
             )
             .httpBasic(AbstractHttpConfigurer::disable)
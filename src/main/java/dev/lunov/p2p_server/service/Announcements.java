@@ -0,0 +1,129 @@
+package dev.lunov.p2p_server.service;
+
+import dev.lunov.p2p_server.model.ClusterMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * System announcements on {@link #DESTINATION}, which every client subscribes to once. An
+ * announcement is encoded once and published once; the broker hands the same bytes to each
+ * subscriber.
+ * <p>
+ * Announcements from the last {@code announcements.replay-seconds} are replayed to a session
+ * when it subscribes, marked with a {@code replay} header, so peers that connect shortly after
+ * a broadcast still see it. A broadcast racing a subscription can arrive twice; clients should
+ * skip ids they have already shown. Announcements are published to every node of the cluster.
+ */
+@Service
+public class Announcements {
+
+    public static final String DESTINATION = "/topic/system";
+    public static final String REPLAY_HEADER = "replay";
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private SignalRouter signalRouter;
+
+    @Autowired
+    private ClusterBus clusterBus;
+
+    @Value("${announcements.replay-seconds:300}")
+    private long replaySeconds;
+
+    @Value("${announcements.max-replay:20}")
+    private int maxReplay;
+
+    private record Sent(long sentAt, EncodedPayload payload) {
+    }
+
+    // Oldest first; guarded by itself
+    private final Deque<Sent> recent = new ArrayDeque<>();
+    // Starts at the clock so ids from other nodes and earlier runs do not collide in client dedup
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis());
+    private final LongAdder broadcasts = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final Logger logger = Logger.getLogger(Announcements.class.getName());
+
+    public long broadcast(String text) {
+        long id = sequence.incrementAndGet();
+        long now = System.currentTimeMillis();
+        Map<String, Object> announcement = new LinkedHashMap<>();
+        announcement.put("id", id);
+        announcement.put("senderId", "system_admin");
+        announcement.put("senderName", "Системне сповіщення");
+        announcement.put("text", text);
+        announcement.put("type", "text");
+        announcement.put("timestamp", now);
+        EncodedPayload payload = EncodedPayload.encode("announcement", id, announcement);
+        publish(now, payload);
+        clusterBus.publish(ClusterMessage.frame(ClusterMessage.Type.PUBLISH, clusterBus.getNodeId(), DESTINATION,
+                MimeTypeUtils.APPLICATION_JSON_VALUE, Map.of(), payload.bytes()));
+        return id;
+    }
+
+    /**
+     * Publishes an announcement broadcast on another node to this node's subscribers.
+     */
+    public void receive(ClusterMessage message) {
+        publish(System.currentTimeMillis(), new EncodedPayload(0, message.payload(), null));
+    }
+
+    private void publish(long now, EncodedPayload payload) {
+        synchronized (recent) {
+            recent.addLast(new Sent(now, payload));
+            while (recent.size() > maxReplay) {
+                recent.removeFirst();
+            }
+        }
+        messagingTemplate.convertAndSend(DESTINATION, payload);
+        broadcasts.increment();
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        if (!DESTINATION.equals(accessor.getDestination())) {
+            return;
+        }
+        SignalRouter.Route route = new SignalRouter.Route(accessor.getSessionId(), accessor.getSubscriptionId());
+        for (Sent sent : pending()) {
+            signalRouter.deliver(route, DESTINATION, sent.payload().bytes(), MimeTypeUtils.APPLICATION_JSON,
+                    Map.of(REPLAY_HEADER, "true"));
+            replayed.increment();
+        }
+    }
+
+    private List<Sent> pending() {
+        long cutoff = System.currentTimeMillis() - replaySeconds * 1000;
+        synchronized (recent) {
+            while (!recent.isEmpty() && recent.peekFirst().sentAt() < cutoff) {
+                recent.removeFirst();
+            }
+            return List.copyOf(recent);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        return Map.of(
+                "broadcasts", broadcasts.sum(),
+                "replayable", pending().size(),
+                "replayed", replayed.sum());
+    }
+}
@@ -0,0 +1,98 @@
+package dev.lunov.p2p_server.service;
+
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed avatar storage. Images are stored once under their SHA-256 hash, so the
+ * same avatar re-sent on every register costs one hash and no extra write.
+ */
+@Service
+public class AvatarStore {
+
+    public static final int MAX_AVATAR_BYTES = 1024 * 1024;
+
+    private static final Pattern HASH_PATTERN = Pattern.compile("^[0-9a-f]{64}$");
+
+    private final Path avatarDir = Paths.get("uploads", "avatars");
+
+    public AvatarStore() {
+        try {
+            if (!Files.exists(avatarDir)) {
+                Files.createDirectories(avatarDir);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not initialize avatar storage directory", e);
+        }
+    }
+
+    /**
+     * Accepts either plain base64 or a {@code data:image/...;base64,} URL.
+     */
+    public String storeBase64(String avatarBase64) throws IOException {
+        String encoded = avatarBase64;
+        int comma = encoded.indexOf(',');
+        if (encoded.startsWith("data:") && comma > 0) {
+            encoded = encoded.substring(comma + 1);
+        }
+        return store(Base64.getMimeDecoder().decode(encoded));
+    }
+
+    public String store(byte[] image) throws IOException {
+        if (image.length == 0 || image.length > MAX_AVATAR_BYTES) {
+            throw new IllegalArgumentException("Avatar must be between 1 byte and " + MAX_AVATAR_BYTES + " bytes");
+        }
+        String hash = sha256(image);
+        Path target = avatarDir.resolve(hash);
+        if (!Files.exists(target)) {
+            // Write to a temp file first so a concurrent reader never sees a partial image
+            Path tmp = Files.createTempFile(avatarDir, hash, ".tmp");
+            Files.write(tmp, image);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return hash;
+    }
+
+    public Path resolve(String hash) {
+        if (hash == null || !HASH_PATTERN.matcher(hash).matches()) {
+            return null;
+        }
+        Path file = avatarDir.resolve(hash);
+        return Files.exists(file) ? file : null;
+    }
+
+    public static String contentType(byte[] head) {
+        if (head.length >= 8 && (head[0] & 0xFF) == 0x89 && head[1] == 'P' && head[2] == 'N' && head[3] == 'G') {
+            return "image/png";
+        }
+        if (head.length >= 3 && (head[0] & 0xFF) == 0xFF && (head[1] & 0xFF) == 0xD8 && (head[2] & 0xFF) == 0xFF) {
+            return "image/jpeg";
+        }
+        if (head.length >= 4 && head[0] == 'G' && head[1] == 'I' && head[2] == 'F' && head[3] == '8') {
+            return "image/gif";
+        }
+        if (head.length >= 12 && head[0] == 'R' && head[1] == 'I' && head[2] == 'F' && head[3] == 'F'
+                && head[8] == 'W' && head[9] == 'E' && head[10] == 'B' && head[11] == 'P') {
+            return "image/webp";
+        }
+        return "application/octet-stream";
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package dev.lunov.p2p_server.service;
+
+import dev.lunov.p2p_server.model.CallAnswer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Tracks calls between pairs of peers: a call is ringing from {@code /app/call} until it is
+ * answered, declined or times out, then connected until either side hangs up or disconnects.
+ * A peer takes part in at most one call, so a second call to or from a busy peer is refused
+ * before any SDP is relayed, and a repeated call request or an answer to a call that is not
+ * ringing is dropped.
+ * <p>
+ * Refused and timed-out calls are answered on the caller's {@code /topic/answer/<callerId>}
+ * with {@code accepted=false} and a {@link #REJECTED_HEADER} giving the reason; a timed-out
+ * callee also gets a hangup. Ringing and connected calls expire through one
+ * {@link TimingWheel}. Setup latency is recorded from call to answer and from answer to the
+ * first SDP.
+ */
+@Service
+public class CallRegistry {
+
+    public static final String REJECTED_HEADER = "call-rejected";
+
+    public enum State { RINGING, CONNECTED }
+
+    public enum Decision {
+        /** Relay the frame */
+        RELAY,
+        /** The same call is already ringing */
+        DUPLICATE,
+        /** Caller or callee is in another call; the caller has been told */
+        BUSY,
+        /** No ringing call to answer */
+        STALE
+    }
+
+    private static final class Call {
+        final String caller;
+        final String callee;
+        final long startedAt = System.nanoTime();
+        State state = State.RINGING;
+        long answeredAt;
+        boolean sdpSeen;
+
+        Call(String caller, String callee) {
+            this.caller = caller;
+            this.callee = callee;
+        }
+
+        String other(String peerId) {
+            return caller.equals(peerId) ? callee : caller;
+        }
+
+        boolean between(String a, String b) {
+            return (caller.equals(a) && callee.equals(b)) || (caller.equals(b) && callee.equals(a));
+        }
+    }
+
+    @Autowired
+    private SignalRouter signalRouter;
+
+    @Value("${calls.ring-timeout-ms:45000}")
+    private long ringTimeoutMs;
+
+    @Value("${calls.max-connected-minutes:240}")
+    private long maxConnectedMinutes;
+
+    // Both parties map to the same call. Guarded by this.
+    private final Map<String, Call> byPeer = new HashMap<>();
+    private TimingWheel<Call> expiry;
+
+    private final LatencyHistogram callToAnswer = new LatencyHistogram();
+    private final LatencyHistogram answerToSdp = new LatencyHistogram();
+    private final LatencyHistogram callToSdp = new LatencyHistogram();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder connected = new LongAdder();
+    private final LongAdder declined = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder busy = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder staleAnswers = new LongAdder();
+    private final Logger logger = Logger.getLogger(CallRegistry.class.getName());
+
+    @PostConstruct
+    public void init() {
+        // 100 ms ticks, one revolution per 51.2 s
+        expiry = new TimingWheel<>("call-expiry", 100, 512, this::expire);
+    }
+
+    public Decision call(String callerId, String calleeId) {
+        String rejection;
+        synchronized (this) {
+            Call current = byPeer.get(callerId);
+            if (current != null && current.between(callerId, calleeId)) {
+                if (current.state == State.RINGING && current.caller.equals(callerId)) {
+                    duplicates.increment();
+                    return Decision.DUPLICATE;
+                }
+                // Calling the same peer again means the previous call is over, even if its hangup was lost
+                end(current);
+            }
+            if (byPeer.containsKey(callerId)) {
+                rejection = "caller-busy";
+            } else if (byPeer.containsKey(calleeId)) {
+                rejection = "busy";
+            } else {
+                Call call = new Call(callerId, calleeId);
+                byPeer.put(callerId, call);
+                byPeer.put(calleeId, call);
+                expiry.schedule(call, ringTimeoutMs);
+                started.increment();
+                return Decision.RELAY;
+            }
+        }
+        busy.increment();
+        reject(callerId, rejection);
+        return Decision.BUSY;
+    }
+
+    /**
+     * @param calleeId the peer answering; only the callee of the ringing call may
+     */
+    public synchronized Decision answer(String callerId, String calleeId, boolean accepted) {
+        Call call = byPeer.get(callerId);
+        if (call == null || call.state != State.RINGING || !call.caller.equals(callerId) || !call.callee.equals(calleeId)) {
+            staleAnswers.increment();
+            return Decision.STALE;
+        }
+        long now = System.nanoTime();
+        callToAnswer.record(TimeUnit.NANOSECONDS.toMillis(now - call.startedAt));
+        if (accepted) {
+            call.state = State.CONNECTED;
+            call.answeredAt = now;
+            expiry.schedule(call, TimeUnit.MINUTES.toMillis(maxConnectedMinutes));
+            connected.increment();
+        } else {
+            end(call);
+            declined.increment();
+        }
+        return Decision.RELAY;
+    }
+
+    /**
+     * Notes an SDP relayed from {@code senderId} to {@code targetId}; the first one between the
+     * parties of a call after the answer completes its setup.
+     */
+    public synchronized void onSdp(String senderId, String targetId) {
+        Call call = byPeer.get(targetId);
+        if (call == null || !call.between(senderId, targetId) || call.state != State.CONNECTED || call.sdpSeen) {
+            return;
+        }
+        call.sdpSeen = true;
+        long now = System.nanoTime();
+        answerToSdp.record(TimeUnit.NANOSECONDS.toMillis(now - call.answeredAt));
+        callToSdp.record(TimeUnit.NANOSECONDS.toMillis(now - call.startedAt));
+    }
+
+    public synchronized void hangup(String peerId, String otherId) {
+        Call call = byPeer.get(peerId);
+        if (call != null && call.between(peerId, otherId)) {
+            end(call);
+        }
+    }
+
+    /**
+     * Ends the call of a peer that went away and sends the other party a hangup.
+     */
+    public void leave(String peerId) {
+        String other;
+        synchronized (this) {
+            Call call = byPeer.get(peerId);
+            if (call == null) {
+                return;
+            }
+            end(call);
+            other = call.other(peerId);
+        }
+        signalRouter.send("/topic/hangup/" + other, peerId);
+    }
+
+    public synchronized State getState(String peerId) {
+        Call call = byPeer.get(peerId);
+        return call == null ? null : call.state;
+    }
+
+    private void expire(Call call) {
+        synchronized (this) {
+            if (byPeer.get(call.caller) != call) {
+                return;
+            }
+            end(call);
+        }
+        if (call.state == State.RINGING) {
+            timedOut.increment();
+            reject(call.caller, "timeout");
+            signalRouter.send("/topic/hangup/" + call.callee, call.caller);
+        } else {
+            logger.warning("Ending call " + call.caller + " -> " + call.callee + " after " + maxConnectedMinutes + " minutes");
+            signalRouter.send("/topic/hangup/" + call.caller, call.callee);
+            signalRouter.send("/topic/hangup/" + call.callee, call.caller);
+        }
+    }
+
+    private void end(Call call) {
+        byPeer.remove(call.caller, call);
+        byPeer.remove(call.callee, call);
+        expiry.cancel(call);
+    }
+
+    private void reject(String callerId, String reason) {
+        signalRouter.send("/topic/answer/" + callerId, new CallAnswer(callerId, false), Map.of(REJECTED_HEADER, reason));
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        long ringing = byPeer.values().stream().filter(call -> call.state == State.RINGING).count() / 2;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ringing", ringing);
+        stats.put("connected", byPeer.size() / 2 - ringing);
+        stats.put("started", started.sum());
+        stats.put("answered", connected.sum());
+        stats.put("declined", declined.sum());
+        stats.put("timedOut", timedOut.sum());
+        stats.put("rejectedBusy", busy.sum());
+        stats.put("duplicates", duplicates.sum());
+        stats.put("staleAnswers", staleAnswers.sum());
+        stats.put("callToAnswer", callToAnswer.getStats());
+        stats.put("answerToFirstSdp", answerToSdp.getStats());
+        stats.put("callToFirstSdp", callToSdp.getStats());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        expiry.stop();
+    }
+}
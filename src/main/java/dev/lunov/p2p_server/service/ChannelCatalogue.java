@@ -0,0 +1,185 @@
+package dev.lunov.p2p_server.service;
+
+import dev.lunov.p2p_server.dto.ChannelPage;
+import dev.lunov.p2p_server.model.ChannelSummary;
+import dev.lunov.p2p_server.model.PublicChannel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static dev.lunov.p2p_server.service.PeerDirectory.SEPARATOR;
+import static dev.lunov.p2p_server.service.PeerDirectory.UPPER_BOUND;
+import static dev.lunov.p2p_server.service.PeerDirectory.normalize;
+
+/**
+ * Sorted indexes over public channels: by lower-cased name then id (which also serves name
+ * prefix queries), an inverted index from tag to the channels carrying it, and by subscriber
+ * count. A tag-filtered query walks the smallest matching tag slice. Updated by
+ * {@link ChannelRegistry} under its lock; queries are lock-free.
+ */
+public class ChannelCatalogue {
+
+    public static final int MAX_PAGE_SIZE = 200;
+
+    public enum Sort {
+        NAME, POPULAR;
+
+        public static Sort of(String value) {
+            return "popular".equalsIgnoreCase(value) ? POPULAR : NAME;
+        }
+    }
+
+    private record Listing(PublicChannel channel, Set<String> tags, String nameKey, long subscribers) {
+
+        String popularityKey() {
+            // Most subscribers first, then by name
+            return String.format("%019d", Long.MAX_VALUE - subscribers) + SEPARATOR + nameKey;
+        }
+
+        ChannelSummary summary() {
+            return new ChannelSummary(channel.id(), channel.name(), List.copyOf(tags), channel.creatorId(), subscribers);
+        }
+    }
+
+    private final Map<String, Listing> listings = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<String, Listing> byName = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<String, Listing> byPopularity = new ConcurrentSkipListMap<>();
+    private final Map<String, ConcurrentSkipListMap<String, Listing>> byTag = new ConcurrentHashMap<>();
+
+    ChannelSummary put(PublicChannel channel) {
+        Listing previous = listings.get(channel.id());
+        Listing listing = new Listing(channel, tagsOf(channel.tags()),
+                normalize(channel.name()) + SEPARATOR + channel.id(),
+                previous == null ? 0 : previous.subscribers());
+        index(previous, listing);
+        return listing.summary();
+    }
+
+    void remove(String id) {
+        Listing listing = listings.remove(id);
+        if (listing != null) {
+            unindex(listing);
+        }
+    }
+
+    /**
+     * @return the updated entry, or {@code null} if the channel is not listed
+     */
+    ChannelSummary setSubscribers(String id, long subscribers) {
+        Listing previous = listings.get(id);
+        if (previous == null || previous.subscribers() == subscribers) {
+            return null;
+        }
+        Listing listing = new Listing(previous.channel(), previous.tags(), previous.nameKey(), subscribers);
+        index(previous, listing);
+        return listing.summary();
+    }
+
+    public ChannelSummary get(String id) {
+        Listing listing = listings.get(id);
+        return listing == null ? null : listing.summary();
+    }
+
+    /**
+     * @param prefix case-insensitive name prefix, or {@code null} for all channels
+     * @param tags   tags every returned channel must carry; empty for no filter
+     * @param cursor {@code nextCursor} of the previous page with the same filters, or {@code null}
+     */
+    public ChannelPage search(String prefix, Collection<String> tags, Sort sort, String cursor, int limit, long version) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        String from = prefix == null ? "" : normalize(prefix);
+        Set<String> required = new LinkedHashSet<>();
+        if (tags != null) {
+            for (String tag : tags) {
+                required.addAll(tagsOf(tag));
+            }
+        }
+
+        NavigableMap<String, Listing> source = byName;
+        if (sort == Sort.POPULAR) {
+            source = byPopularity;
+        } else {
+            for (String tag : required) {
+                ConcurrentSkipListMap<String, Listing> slice = byTag.get(tag);
+                if (slice == null) {
+                    return new ChannelPage(List.of(), null, version);
+                }
+                if (source == byName || slice.size() < source.size()) {
+                    source = slice;
+                }
+            }
+            source = source.subMap(from, true, from + UPPER_BOUND, false);
+        }
+        String after = PeerDirectory.decodeCursor(cursor);
+        if (after != null) {
+            source = source.tailMap(after, false);
+        }
+
+        List<ChannelSummary> page = new ArrayList<>(pageSize);
+        String lastKey = null;
+        for (Map.Entry<String, Listing> entry : source.entrySet()) {
+            Listing listing = entry.getValue();
+            if (!listing.nameKey().startsWith(from) || !listing.tags().containsAll(required)) {
+                continue;
+            }
+            if (page.size() == pageSize) {
+                return new ChannelPage(page, PeerDirectory.encodeCursor(lastKey), version);
+            }
+            page.add(listing.summary());
+            lastKey = entry.getKey();
+        }
+        return new ChannelPage(page, null, version);
+    }
+
+    /**
+     * Parses a free-form tag string ({@code "music, #jazz live"}) into lower-cased tags.
+     */
+    public static Set<String> tagsOf(String tags) {
+        Set<String> parsed = new LinkedHashSet<>();
+        if (tags != null) {
+            for (String tag : tags.split("[,;\\s]+")) {
+                String normalized = normalize(tag.startsWith("#") ? tag.substring(1) : tag);
+                if (!normalized.isEmpty()) {
+                    parsed.add(normalized);
+                }
+            }
+        }
+        return parsed;
+    }
+
+    private void index(Listing previous, Listing listing) {
+        if (previous != null) {
+            unindex(previous);
+        }
+        listings.put(listing.channel().id(), listing);
+        byName.put(listing.nameKey(), listing);
+        byPopularity.put(listing.popularityKey(), listing);
+        for (String tag : listing.tags()) {
+            byTag.computeIfAbsent(tag, k -> new ConcurrentSkipListMap<>()).put(listing.nameKey(), listing);
+        }
+    }
+
+    private void unindex(Listing listing) {
+        byName.remove(listing.nameKey());
+        byPopularity.remove(listing.popularityKey());
+        for (String tag : listing.tags()) {
+            byTag.computeIfPresent(tag, (k, slice) -> {
+                slice.remove(listing.nameKey());
+                return slice.isEmpty() ? null : slice;
+            });
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        return Map.of(
+                "channels", listings.size(),
+                "tags", byTag.size());
+    }
+}
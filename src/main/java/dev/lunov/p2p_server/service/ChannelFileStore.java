@@ -0,0 +1,379 @@
+package dev.lunov.p2p_server.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed storage for channel files. Each upload is hashed while it streams in and
+ * its bytes are kept once under {@code uploads/blobs/<sha256>}; the file id handed to clients
+ * ({@code UUID + extension}) only points at the blob. A blob is deleted when the last file id
+ * pointing at it is deleted or expires, so a file reposted across channels takes disk space
+ * once.
+ * <p>
+ * File ids, blobs and reference counts live in memory. Every change is appended to
+ * {@code uploads/blobs/manifest} ({@code + fileId hash size createdAt owner channelId} /
+ * {@code - fileId}), which is replayed and compacted at startup; blobs nothing points at are
+ * deleted then.
+ */
+@Service
+public class ChannelFileStore {
+
+    public static final String OCTET_STREAM = "application/octet-stream";
+
+    private static final Pattern EXTENSION_PATTERN = Pattern.compile("^\\.[A-Za-z0-9]{1,10}$");
+    private static final Pattern HASH_PATTERN = Pattern.compile("^[0-9a-f]{64}$");
+    // Rewrite the manifest once it holds this many more lines than live files
+    private static final int COMPACT_SLACK = 1024;
+
+    @Autowired
+    private FileMetadataCache fileMetadataCache;
+
+    /**
+     * @param createdAt   when the upload completed, in epoch millis; channel files expire by it
+     * @param contentType from the file id's extension
+     * @param owner       username of the uploader
+     * @param channelId   the channel it was posted to, or {@code null}
+     */
+    public record StoredFile(String fileId, String hash, long size, long createdAt, String contentType,
+                             String owner, String channelId) {
+    }
+
+    /**
+     * Told about file ids as they come and go, while the store is locked.
+     */
+    public interface Listener {
+        void stored(StoredFile file);
+
+        default void deleted(StoredFile file) {
+        }
+    }
+
+    private static final class Blob {
+        final long size;
+        int references;
+
+        Blob(long size) {
+            this.size = size;
+        }
+    }
+
+    private final Path blobDir;
+    private final Path manifest;
+    // Where channel files were kept before they were content-addressed
+    private final Path legacyDir;
+
+    private final Map<String, StoredFile> files = new HashMap<>();
+    private final Map<String, Blob> blobs = new HashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private BufferedWriter manifestWriter;
+    private int manifestLines;
+    private long storedBytes;
+    private long referencedBytes;
+    private long duplicates;
+    private final LatencyHistogram newUploads = new LatencyHistogram();
+    private final LatencyHistogram duplicateUploads = new LatencyHistogram();
+    private final Logger logger = Logger.getLogger(ChannelFileStore.class.getName());
+
+    public ChannelFileStore() {
+        this(Paths.get("uploads"));
+    }
+
+    ChannelFileStore(Path uploadRoot) {
+        blobDir = uploadRoot.resolve("blobs");
+        manifest = blobDir.resolve("manifest");
+        legacyDir = uploadRoot.resolve("channels");
+    }
+
+    @PostConstruct
+    public synchronized void init() throws IOException {
+        Files.createDirectories(blobDir);
+        if (Files.exists(manifest)) {
+            for (String line : Files.readAllLines(manifest)) {
+                replay(line);
+            }
+        }
+        files.values().removeIf(file -> !Files.exists(blobPath(file.hash())));
+        for (StoredFile file : files.values()) {
+            reference(file);
+        }
+        // Blobs nothing points at, and temp files of uploads cut short by a restart
+        try (Stream<Path> list = Files.list(blobDir)) {
+            for (Path path : list.toList()) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(".tmp") || (HASH_PATTERN.matcher(name).matches() && !blobs.containsKey(name))) {
+                    Files.delete(path);
+                }
+            }
+        }
+        // A blob's name is its SHA-256, so its first download needs no hashing either
+        for (String hash : blobs.keySet()) {
+            fileMetadataCache.put(blobPath(hash), HexFormat.of().parseHex(hash), OCTET_STREAM);
+        }
+        rewriteManifest();
+        importLegacy();
+        logger.info("Channel file store: " + files.size() + " files in " + blobs.size() + " blobs");
+    }
+
+    /**
+     * Streams {@code in} into the store as {@code fileId}, hashing it on the way.
+     */
+    public StoredFile store(InputStream in, String fileId, String owner, String channelId) throws IOException {
+        long start = System.nanoTime();
+        MessageDigest digest = FileMetadataCache.sha256();
+        Path tmp = Files.createTempFile(blobDir, "upload", ".tmp");
+        try (InputStream hashed = new DigestInputStream(in, digest)) {
+            Files.copy(hashed, tmp, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        boolean[] duplicate = new boolean[1];
+        StoredFile file = commit(tmp, digest.digest(), fileId, owner, channelId, duplicate);
+        (duplicate[0] ? duplicateUploads : newUploads).record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return file;
+    }
+
+    /**
+     * Takes over a complete file written elsewhere under {@code uploads}: it is moved into the
+     * store, or deleted if a blob with the same content is already there.
+     *
+     * @param digest SHA-256 of its content
+     */
+    public StoredFile commit(Path source, byte[] digest, String fileId, String owner, String channelId) throws IOException {
+        return commit(source, digest, fileId, owner, channelId, new boolean[1]);
+    }
+
+    private synchronized StoredFile commit(Path source, byte[] digest, String fileId, String owner, String channelId,
+                                           boolean[] duplicate) throws IOException {
+        String hash = HexFormat.of().formatHex(digest);
+        Path blob = blobPath(hash);
+        long size = Files.size(source);
+        duplicate[0] = blobs.containsKey(hash);
+        if (duplicate[0]) {
+            Files.delete(source);
+            duplicates++;
+        } else {
+            Files.move(source, blob, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            fileMetadataCache.put(blob, digest, OCTET_STREAM);
+        }
+        StoredFile file = new StoredFile(fileId, hash, size, System.currentTimeMillis(), contentType(fileId),
+                owner, channelId);
+        StoredFile previous = files.put(fileId, file);
+        reference(file);
+        if (previous != null) {
+            dereference(previous);
+        }
+        append(added(file));
+        for (Listener listener : listeners) {
+            if (previous != null) {
+                listener.deleted(previous);
+            }
+            listener.stored(file);
+        }
+        return file;
+    }
+
+    /**
+     * @return the files stored so far; the listener is told about every change after them
+     */
+    public synchronized List<StoredFile> addListener(Listener listener) {
+        listeners.add(listener);
+        return new ArrayList<>(files.values());
+    }
+
+    /**
+     * @return {@code null} if there is no such file
+     */
+    public synchronized StoredFile get(String fileId) {
+        return files.get(fileId);
+    }
+
+    public Path blobPath(String hash) {
+        return blobDir.resolve(hash);
+    }
+
+    /**
+     * Forgets {@code fileId}; its blob is deleted if nothing else points at it.
+     *
+     * @return false if there was no such file
+     */
+    public synchronized boolean delete(String fileId) throws IOException {
+        StoredFile file = files.remove(fileId);
+        if (file == null) {
+            return false;
+        }
+        dereference(file);
+        append("- " + fileId);
+        for (Listener listener : listeners) {
+            listener.deleted(file);
+        }
+        return true;
+    }
+
+    /**
+     * @return the extension of {@code filename} if it is a plain one, such as {@code .jpg}, else {@code ""}
+     */
+    public static String extensionOf(String filename) {
+        if (filename != null && filename.contains(".")) {
+            String candidate = filename.substring(filename.lastIndexOf('.'));
+            if (EXTENSION_PATTERN.matcher(candidate).matches()) {
+                return candidate;
+            }
+        }
+        return "";
+    }
+
+    private void reference(StoredFile file) {
+        Blob blob = blobs.get(file.hash());
+        if (blob == null) {
+            blob = new Blob(file.size());
+            blobs.put(file.hash(), blob);
+            storedBytes += file.size();
+        }
+        blob.references++;
+        referencedBytes += file.size();
+    }
+
+    private void dereference(StoredFile file) throws IOException {
+        Blob blob = blobs.get(file.hash());
+        referencedBytes -= file.size();
+        if (--blob.references == 0) {
+            blobs.remove(file.hash());
+            storedBytes -= blob.size;
+            Path path = blobPath(file.hash());
+            fileMetadataCache.evict(path);
+            Files.deleteIfExists(path);
+        }
+    }
+
+    // + fileId hash size createdAt owner channelId, with owner and channel URL-encoded and "-" for none
+    private static String added(StoredFile file) {
+        return "+ " + file.fileId() + " " + file.hash() + " " + file.size() + " " + file.createdAt()
+                + " " + encode(file.owner()) + " " + encode(file.channelId());
+    }
+
+    private static String encode(String value) {
+        return value == null ? "-" : URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static String decode(String value) {
+        return value.equals("-") ? null : URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+
+    private void replay(String line) {
+        String[] parts = line.split(" ");
+        // Lines without owner and channel predate quotas
+        if ((parts.length == 5 || parts.length == 7) && parts[0].equals("+") && HASH_PATTERN.matcher(parts[2]).matches()) {
+            files.put(parts[1], new StoredFile(parts[1], parts[2], Long.parseLong(parts[3]), Long.parseLong(parts[4]),
+                    contentType(parts[1]), parts.length == 7 ? decode(parts[5]) : null,
+                    parts.length == 7 ? decode(parts[6]) : null));
+        } else if (parts.length == 2 && parts[0].equals("-")) {
+            files.remove(parts[1]);
+        }
+    }
+
+    private void append(String line) throws IOException {
+        manifestWriter.write(line);
+        manifestWriter.newLine();
+        manifestWriter.flush();
+        if (++manifestLines > files.size() + COMPACT_SLACK) {
+            rewriteManifest();
+        }
+    }
+
+    private void rewriteManifest() throws IOException {
+        if (manifestWriter != null) {
+            manifestWriter.close();
+        }
+        Path tmp = blobDir.resolve("manifest.tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp)) {
+            for (StoredFile file : files.values()) {
+                writer.write(added(file));
+                writer.newLine();
+            }
+        }
+        Files.move(tmp, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        manifestLines = files.size();
+        manifestWriter = Files.newBufferedWriter(manifest, StandardOpenOption.APPEND);
+    }
+
+    // Files stored before this store existed keep their name as file id and their age
+    private void importLegacy() throws IOException {
+        if (!Files.isDirectory(legacyDir)) {
+            return;
+        }
+        try (Stream<Path> list = Files.list(legacyDir)) {
+            for (Path path : list.filter(Files::isRegularFile).toList()) {
+                if (path.getFileName().toString().chars().anyMatch(Character::isWhitespace)) {
+                    // Would not fit a manifest line; it was about to expire anyway
+                    Files.delete(path);
+                    continue;
+                }
+                MessageDigest digest = FileMetadataCache.sha256();
+                try (InputStream in = new DigestInputStream(Files.newInputStream(path), digest)) {
+                    in.transferTo(OutputStream.nullOutputStream());
+                }
+                long createdAt = Files.getLastModifiedTime(path).toMillis();
+                StoredFile file = commit(path, digest.digest(), path.getFileName().toString(), null, null);
+                files.put(file.fileId(), new StoredFile(file.fileId(), file.hash(), file.size(), createdAt,
+                        file.contentType(), null, null));
+            }
+        }
+        rewriteManifest();
+    }
+
+    private static String contentType(String fileId) {
+        try {
+            String contentType = Files.probeContentType(Path.of(fileId));
+            return contentType != null ? contentType : OCTET_STREAM;
+        } catch (IOException | RuntimeException e) {
+            return OCTET_STREAM;
+        }
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("files", files.size());
+        stats.put("blobs", blobs.size());
+        stats.put("storedBytes", storedBytes);
+        stats.put("referencedBytes", referencedBytes);
+        stats.put("savedBytes", referencedBytes - storedBytes);
+        stats.put("duplicates", duplicates);
+        stats.put("newUploadMs", newUploads.getStats());
+        stats.put("duplicateUploadMs", duplicateUploads.getStats());
+        return stats;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() throws IOException {
+        manifestWriter.close();
+    }
+}
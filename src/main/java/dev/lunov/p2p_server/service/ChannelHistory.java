@@ -0,0 +1,118 @@
+package dev.lunov.p2p_server.service;
+
+import dev.lunov.p2p_server.dto.ChannelHistoryPage;
+import dev.lunov.p2p_server.model.ChannelMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The last {@code channels.history.size} messages of each public channel, so late joiners can
+ * page through recent history instead of asking other members for it.
+ * <p>
+ * Each channel has a fixed ring of slots; a message takes the next sequence number from an
+ * atomic counter and is written to slot {@code seq % size}, so relaying never locks. Messages
+ * are kept as UTF-8 byte arrays and ones over {@code max-message-bytes} are relayed but not
+ * kept, which bounds a channel at roughly {@code size * max-message-bytes}.
+ */
+@Service
+public class ChannelHistory {
+
+    public static final int MAX_PAGE_SIZE = 200;
+
+    @Value("${channels.history.size:256}")
+    private int size;
+
+    @Value("${channels.history.max-message-bytes:16384}")
+    private int maxMessageBytes;
+
+    private final Map<String, Ring> rings = new ConcurrentHashMap<>();
+
+    private record Entry(long seq, long sentAt, byte[] payload) {
+    }
+
+    private static final class Ring {
+        final AtomicLong sequence = new AtomicLong();
+        final AtomicReferenceArray<Entry> slots;
+
+        Ring(int size) {
+            slots = new AtomicReferenceArray<>(size);
+        }
+    }
+
+    /**
+     * Records a message relayed to {@code channelId}.
+     *
+     * @return the message's sequence number within the channel
+     */
+    public long append(String channelId, String message) {
+        Ring ring = rings.computeIfAbsent(channelId, id -> new Ring(size));
+        long seq = ring.sequence.incrementAndGet();
+        byte[] payload = message.getBytes(StandardCharsets.UTF_8);
+        // Oversized messages still consume a sequence number so readers see the gap
+        ring.slots.set((int) (seq % size), new Entry(seq, System.currentTimeMillis(),
+                payload.length <= maxMessageBytes ? payload : null));
+        return seq;
+    }
+
+    /**
+     * Messages with a sequence number greater than {@code since}, oldest first.
+     */
+    public ChannelHistoryPage since(String channelId, long since, int limit) {
+        Ring ring = rings.get(channelId);
+        if (ring == null) {
+            return new ChannelHistoryPage(List.of(), since, false);
+        }
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        long last = ring.sequence.get();
+        long first = Math.max(since + 1, last - size + 1);
+        boolean gap = first > since + 1;
+
+        List<ChannelMessage> messages = new ArrayList<>(Math.min(pageSize, (int) Math.max(0, last - first + 1)));
+        long next = first - 1;
+        for (long seq = first; seq <= last && messages.size() < pageSize; seq++) {
+            Entry entry = ring.slots.get((int) (seq % size));
+            if (entry == null || entry.seq() < seq) {
+                // Sequence taken but the slot not written yet (still empty, or still holding the
+                // previous lap's message); resume here on the next page
+                break;
+            }
+            next = seq;
+            if (entry.seq() > seq) {
+                // Overwritten by a later lap while we were reading: lost to the reader
+                gap = true;
+                continue;
+            }
+            if (entry.payload() == null) {
+                gap = true;
+                continue;
+            }
+            messages.add(new ChannelMessage(seq, entry.sentAt(), new String(entry.payload(), StandardCharsets.UTF_8)));
+        }
+        return new ChannelHistoryPage(messages, next, gap);
+    }
+
+    public void remove(String channelId) {
+        rings.remove(channelId);
+    }
+
+    public Map<String, Object> getStats() {
+        long bytes = 0;
+        for (Ring ring : rings.values()) {
+            for (int i = 0; i < ring.slots.length(); i++) {
+                Entry entry = ring.slots.get(i);
+                if (entry != null && entry.payload() != null) {
+                    bytes += entry.payload().length;
+                }
+            }
+        }
+        return Map.of("channels", rings.size(), "slotsPerChannel", size, "payloadBytes", bytes);
+    }
+}
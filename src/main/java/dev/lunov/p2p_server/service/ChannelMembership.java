@@ -0,0 +1,161 @@
+package dev.lunov.p2p_server.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Who is listening on each {@code /topic/channel/<channelId>}, kept incrementally from STOMP
+ * SUBSCRIBE, UNSUBSCRIBE and disconnect events rather than by scanning broker subscriptions.
+ * A member is a user; one user subscribed from two sessions counts as one member and two
+ * subscriptions.
+ * <p>
+ * Each channel's state is changed inside {@code ConcurrentHashMap.compute}, so updates to
+ * different channels only contend on the map's per-bin locks. Member counts are copied into
+ * the {@link ChannelCatalogue} every {@code channels.members.refresh-ms}.
+ */
+@Service
+public class ChannelMembership {
+
+    public static final String CHANNEL_PREFIX = "/topic/channel/";
+
+    @Autowired
+    private ChannelRegistry channelRegistry;
+
+    private static final class Members {
+        // Subscriptions per member; only mutated inside channels.compute()
+        final Map<String, Integer> members = new ConcurrentHashMap<>();
+        volatile int subscriptions;
+    }
+
+    private record Subscription(String channelId, String member) {
+    }
+
+    private final Map<String, Members> channels = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Subscription>> sessions = new ConcurrentHashMap<>();
+    private final LongAdder subscriptions = new LongAdder();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private volatile long refreshedVersion = -1;
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        String destination = accessor.getDestination();
+        if (destination == null || !destination.startsWith(CHANNEL_PREFIX) || destination.length() == CHANNEL_PREFIX.length()) {
+            return;
+        }
+        String member = event.getUser() != null ? event.getUser().getName() : accessor.getSessionId();
+        Subscription subscription = new Subscription(destination.substring(CHANNEL_PREFIX.length()), member);
+        Subscription replaced = sessions.computeIfAbsent(accessor.getSessionId(), k -> new ConcurrentHashMap<>())
+                .put(accessor.getSubscriptionId(), subscription);
+        if (replaced != null) {
+            leave(replaced);
+        }
+        join(subscription);
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        Map<String, Subscription> subscriptions = sessions.get(accessor.getSessionId());
+        Subscription subscription = subscriptions == null ? null : subscriptions.remove(accessor.getSubscriptionId());
+        if (subscription != null) {
+            leave(subscription);
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Map<String, Subscription> subscriptions = sessions.remove(event.getSessionId());
+        if (subscriptions != null) {
+            subscriptions.values().forEach(this::leave);
+        }
+    }
+
+    private void join(Subscription subscription) {
+        channels.compute(subscription.channelId(), (id, state) -> {
+            Members members = state != null ? state : new Members();
+            members.members.merge(subscription.member(), 1, Integer::sum);
+            members.subscriptions++;
+            return members;
+        });
+        subscriptions.increment();
+        dirty.set(true);
+    }
+
+    private void leave(Subscription subscription) {
+        channels.computeIfPresent(subscription.channelId(), (id, members) -> {
+            members.members.computeIfPresent(subscription.member(), (member, count) -> count == 1 ? null : count - 1);
+            members.subscriptions--;
+            return members.subscriptions == 0 ? null : members;
+        });
+        subscriptions.decrement();
+        dirty.set(true);
+    }
+
+    public int getMemberCount(String channelId) {
+        Members members = channels.get(channelId);
+        return members == null ? 0 : members.members.size();
+    }
+
+    public Set<String> getMembers(String channelId) {
+        Members members = channels.get(channelId);
+        return members == null ? Set.of() : Set.copyOf(members.members.keySet());
+    }
+
+    public int getSubscriptionCount(String channelId) {
+        Members members = channels.get(channelId);
+        return members == null ? 0 : members.subscriptions;
+    }
+
+    /**
+     * Copies member counts of registered channels into the catalogue when memberships or the
+     * registry changed since the last run.
+     */
+    @Scheduled(fixedRateString = "${channels.members.refresh-ms:5000}")
+    public void refreshCatalogue() {
+        long version = channelRegistry.getVersion();
+        if (!dirty.getAndSet(false) && version == refreshedVersion) {
+            return;
+        }
+        refreshedVersion = version;
+        Map<String, Long> counts = new HashMap<>();
+        for (String channelId : channelRegistry.getChannels().keySet()) {
+            counts.put(channelId, (long) getMemberCount(channelId));
+        }
+        channelRegistry.setSubscribers(counts);
+    }
+
+    public Map<String, Object> getStats() {
+        List<Map.Entry<String, Members>> busiest = channels.entrySet().stream()
+                .sorted(Comparator.comparingInt((Map.Entry<String, Members> entry) -> entry.getValue().members.size()).reversed())
+                .limit(10)
+                .toList();
+        Map<String, Object> top = new LinkedHashMap<>();
+        for (Map.Entry<String, Members> entry : busiest) {
+            top.put(entry.getKey(), Map.of(
+                    "members", entry.getValue().members.size(),
+                    "subscriptions", entry.getValue().subscriptions));
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("channels", channels.size());
+        stats.put("subscriptions", subscriptions.sum());
+        stats.put("busiest", top);
+        return stats;
+    }
+}
@@ -0,0 +1,130 @@
+package dev.lunov.p2p_server.service;
+
+import dev.lunov.p2p_server.model.ChannelDelta;
+import dev.lunov.p2p_server.model.ClusterMessage;
+import dev.lunov.p2p_server.model.ChannelSummary;
+import dev.lunov.p2p_server.model.PublicChannel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of public channels, indexed for search by {@link ChannelCatalogue}. Every change
+ * bumps the version and publishes a {@link ChannelDelta} to {@link #DELTA_TOPIC}; clients page
+ * through the catalogue once and apply deltas on top of it, like presence. Subscriber counts
+ * (from {@link ChannelMembership}) update the catalogue's popularity order but are not
+ * published as deltas.
+ * <p>
+ * Channels are replicated to every node of the cluster; the last registration wins.
+ */
+@Service
+public class ChannelRegistry {
+
+    public static final String DELTA_TOPIC = "/topic/channels/changes";
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private ClusterBus clusterBus;
+
+    private final Map<String, PublicChannel> channels = new ConcurrentHashMap<>();
+    private final ChannelCatalogue catalogue = new ChannelCatalogue();
+    private final AtomicLong version = new AtomicLong();
+    private volatile EncodedPayload encoded;
+
+    // The map is written before the version is bumped, so an encoding labelled with a version
+    // is never older than that version (at worst newer, which only costs one extra encode).
+    // Deltas are published under this lock so they leave in version order.
+    public synchronized void put(PublicChannel channel) {
+        if (putReplica(channel)) {
+            clusterBus.publish(ClusterMessage.state(ClusterMessage.Type.CHANNEL_PUT, clusterBus.getNodeId(), channel.id(),
+                    EncodedPayload.encode("channel", version.get(), channel).bytes()));
+        }
+    }
+
+    public synchronized boolean remove(String id) {
+        if (!removeReplica(id)) {
+            return false;
+        }
+        clusterBus.publish(ClusterMessage.state(ClusterMessage.Type.CHANNEL_REMOVE, clusterBus.getNodeId(), id, null));
+        return true;
+    }
+
+    /**
+     * Applies a channel registered on another node without publishing it to the cluster again.
+     *
+     * @return {@code false} if nothing changed
+     */
+    public synchronized boolean putReplica(PublicChannel channel) {
+        PublicChannel previous = channels.put(channel.id(), channel);
+        if (channel.equals(previous)) {
+            return false;
+        }
+        ChannelSummary summary = catalogue.put(channel);
+        publish(previous == null ? ChannelDelta.Type.ADD : ChannelDelta.Type.UPDATE, channel.id(), summary);
+        return true;
+    }
+
+    public synchronized boolean removeReplica(String id) {
+        if (channels.remove(id) == null) {
+            return false;
+        }
+        catalogue.remove(id);
+        publish(ChannelDelta.Type.REMOVE, id, null);
+        return true;
+    }
+
+    /**
+     * @param subscribers member counts by channel id; unregistered channels are ignored
+     */
+    public synchronized void setSubscribers(Map<String, Long> subscribers) {
+        subscribers.forEach(catalogue::setSubscribers);
+    }
+
+    public PublicChannel get(String id) {
+        return channels.get(id);
+    }
+
+    public boolean isEmpty() {
+        return channels.isEmpty();
+    }
+
+    public Map<String, PublicChannel> getChannels() {
+        return Collections.unmodifiableMap(channels);
+    }
+
+    public ChannelCatalogue getCatalogue() {
+        return catalogue;
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    public EncodedPayload encoded() {
+        long current = version.get();
+        EncodedPayload cached = encoded;
+        if (cached != null && cached.version() == current) {
+            return cached;
+        }
+        EncodedPayload fresh = EncodedPayload.encode("channels", current, new HashMap<>(channels));
+        synchronized (this) {
+            if (encoded == null || encoded.version() < fresh.version()) {
+                encoded = fresh;
+            }
+        }
+        return fresh;
+    }
+
+    private void publish(ChannelDelta.Type type, String id, ChannelSummary channel) {
+        long next = version.incrementAndGet();
+        messagingTemplate.convertAndSend(DELTA_TOPIC, new ChannelDelta(next, type, id, channel));
+    }
+}
@@ -0,0 +1,42 @@
+package dev.lunov.p2p_server.service;
+
+import dev.lunov.p2p_server.model.ClusterMessage;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Transport between server nodes. Presence and channel changes are published to every other
+ * node, and a frame for a peer connected elsewhere is sent to the node that owns it (see
+ * {@link ClusterReplicator}). Messages from one node arrive at another in the order they were
+ * sent.
+ * <p>
+ * {@link StandaloneClusterBus} is a single node; {@link LoopbackClusterBus} joins nodes
+ * running in the same JVM.
+ */
+public interface ClusterBus {
+
+    String getNodeId();
+
+    Set<String> getNodes();
+
+    /**
+     * Sends {@code message} to every other node.
+     */
+    void publish(ClusterMessage message);
+
+    /**
+     * @return {@code false} if {@code nodeId} is not part of the cluster
+     */
+    boolean send(String nodeId, ClusterMessage message);
+
+    /**
+     * Sets the handler for messages from other nodes; messages arriving before it is set are dropped.
+     */
+    void setReceiver(Consumer<ClusterMessage> receiver);
+
+    Map<String, Object> getStats();
+
+    void close();
+}
@@ -0,0 +1,160 @@
+package dev.lunov.p2p_server.service;
+
+import dev.lunov.p2p_server.model.ClusterMessage;
+import dev.lunov.p2p_server.model.Peer;
+import dev.lunov.p2p_server.model.PublicChannel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Applies what other nodes publish on the {@link ClusterBus}: their peers and channels, frames
+ * for peers connected here, and topic messages for this node's subscribers. Local changes are
+ * published by {@link PresenceService}, {@link ChannelRegistry}, {@link Announcements} and the
+ * channel relay themselves.
+ * <p>
+ * A starting node says hello once it is ready and every other node answers with its local peers
+ * and all channels; a node that shuts down takes its peers with it. Each node keeps its own
+ * broker, call registry, channel history and mailbox.
+ */
+@Service
+public class ClusterReplicator {
+
+    @Autowired
+    private ClusterBus clusterBus;
+
+    @Autowired
+    private PresenceService presenceService;
+
+    @Autowired
+    private ChannelRegistry channelRegistry;
+
+    @Autowired
+    private ChannelHistory channelHistory;
+
+    @Autowired
+    private SignalRouter signalRouter;
+
+    @Autowired
+    private Announcements announcements;
+
+    @Autowired
+    private Mailbox mailbox;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder undeliverable = new LongAdder();
+    private final Logger logger = Logger.getLogger(ClusterReplicator.class.getName());
+
+    @PostConstruct
+    public void init() {
+        clusterBus.setReceiver(this::receive);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void join() {
+        clusterBus.publish(ClusterMessage.state(ClusterMessage.Type.HELLO, clusterBus.getNodeId(), null, null));
+    }
+
+    @PreDestroy
+    public void leave() {
+        clusterBus.publish(ClusterMessage.state(ClusterMessage.Type.NODE_DOWN, clusterBus.getNodeId(), null, null));
+    }
+
+    private void receive(ClusterMessage message) {
+        String source = message.sourceNode();
+        switch (message.type()) {
+            case HELLO -> sendState(source);
+            case NODE_DOWN -> {
+                int removed = presenceService.removeNode(source);
+                logger.info("Node " + source + " left the cluster with " + removed + " peers");
+            }
+            case PEER_UP -> presenceService.registerRemote(EncodedPayload.decode(message.payload(), Peer.class), source);
+            case PEER_DOWN -> presenceService.removeRemote(message.key(), source);
+            case CHANNEL_PUT -> {
+                if (channelRegistry.putReplica(EncodedPayload.decode(message.payload(), PublicChannel.class))) {
+                    messagingTemplate.convertAndSend("/topic/channels", channelRegistry.encoded());
+                }
+            }
+            case CHANNEL_REMOVE -> {
+                if (channelRegistry.removeReplica(message.key())) {
+                    channelHistory.remove(message.key());
+                    messagingTemplate.convertAndSend("/topic/channels", channelRegistry.encoded());
+                }
+            }
+            case DELIVER -> deliver(message);
+            case PUBLISH -> publish(message);
+        }
+    }
+
+    private void sendState(String nodeId) {
+        for (Peer peer : presenceService.getLocalPeers()) {
+            clusterBus.send(nodeId, ClusterMessage.state(ClusterMessage.Type.PEER_UP, clusterBus.getNodeId(), peer.id(),
+                    EncodedPayload.encode("peer", 0, peer).bytes()));
+        }
+        for (PublicChannel channel : channelRegistry.getChannels().values()) {
+            clusterBus.send(nodeId, ClusterMessage.state(ClusterMessage.Type.CHANNEL_PUT, clusterBus.getNodeId(), channel.id(),
+                    EncodedPayload.encode("channel", 0, channel).bytes()));
+        }
+    }
+
+    private void deliver(ClusterMessage message) {
+        if (signalRouter.receive(message)) {
+            delivered.increment();
+            return;
+        }
+        undeliverable.increment();
+        // The target left between the sender's lookup and now; keep direct messages for it here
+        String peerId = SignalRouter.peerIdOf(message.destination());
+        if (message.destination().startsWith("/topic/message/") && peerId != null) {
+            mailbox.append(peerId, message.payload(),
+                    MimeTypeUtils.APPLICATION_OCTET_STREAM.isCompatibleWith(MimeType.valueOf(message.contentType())));
+        }
+    }
+
+    private void publish(ClusterMessage message) {
+        String destination = message.destination();
+        if (Announcements.DESTINATION.equals(destination)) {
+            announcements.receive(message);
+            return;
+        }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(MimeType.valueOf(message.contentType()));
+        message.headers().forEach(accessor::setNativeHeader);
+        // Channel history is per node, so the sequence number is assigned again here
+        String channelId = destination.startsWith(ChannelMembership.CHANNEL_PREFIX)
+                ? destination.substring(ChannelMembership.CHANNEL_PREFIX.length()) : null;
+        if (channelId != null && channelRegistry.get(channelId) != null) {
+            long seq = channelHistory.append(channelId, new String(message.payload(), StandardCharsets.UTF_8));
+            accessor.setNativeHeader("channel-seq", String.valueOf(seq));
+        }
+        accessor.setLeaveMutable(true);
+        messagingTemplate.send(destination, MessageBuilder.createMessage(message.payload(), accessor.getMessageHeaders()));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(clusterBus.getStats());
+        stats.put("localPeers", presenceService.getLocalPeers().size());
+        stats.put("remotePeers", presenceService.getRemotePeerCount());
+        stats.put("forwardedDelivered", delivered.sum());
+        stats.put("forwardedUndeliverable", undeliverable.sum());
+        return stats;
+    }
+}
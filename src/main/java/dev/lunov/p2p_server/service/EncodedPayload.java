@@ -0,0 +1,57 @@
+package dev.lunov.p2p_server.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JSON that has already been serialized for a given registry version. The same bytes are
+ * handed to the broker (see {@code EncodedPayloadMessageConverter}) and to REST responses,
+ * so a snapshot is encoded once per change no matter how many times it is sent.
+ */
+public record EncodedPayload(long version, byte[] bytes, String etag) {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // Distinguishes versions of this process from a previous run that also started at 0
+    private static final String EPOCH = Long.toString(System.currentTimeMillis(), 36);
+
+    public static EncodedPayload encode(String name, long version, Object value) {
+        try {
+            return new EncodedPayload(version, MAPPER.writeValueAsBytes(value), etag(name, version));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to encode " + name + " snapshot", e);
+        }
+    }
+
+    public static <T> T decode(byte[] bytes, Class<T> type) {
+        try {
+            return MAPPER.readValue(bytes, type);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to decode " + type.getSimpleName(), e);
+        }
+    }
+
+    /**
+     * Wraps already encoded JSON as the value of {@code field} next to a {@code version} field,
+     * without serializing it again.
+     */
+    public EncodedPayload wrap(String name, String field) {
+        byte[] prefix = ("{\"version\":" + version + ",\"" + field + "\":").getBytes(StandardCharsets.UTF_8);
+        byte[] wrapped = new byte[prefix.length + bytes.length + 1];
+        System.arraycopy(prefix, 0, wrapped, 0, prefix.length);
+        System.arraycopy(bytes, 0, wrapped, prefix.length, bytes.length);
+        wrapped[wrapped.length - 1] = '}';
+        return new EncodedPayload(version, wrapped, etag(name, version));
+    }
+
+    public boolean matches(String ifNoneMatch) {
+        return ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"));
+    }
+
+    private static String etag(String name, long version) {
+        return "\"" + name + "-" + EPOCH + "-" + version + "\"";
+    }
+}
@@ -1,47 +1,88 @@
 package dev.lunov.p2p_server.service;
 
-import org.springframework.scheduling.annotation.Scheduled;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.attribute.BasicFileAttributes;
-import java.time.Instant;
-import java.time.temporal.ChronoUnit;
-import java.util.stream.Stream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
 
+/**
+ * Deletes ephemeral channel files {@code files.channel.ttl-minutes} after they were stored.
+ * Each file id is put in a {@link TimingWheel} when it is stored, and the wheel is refilled from
+ * the store's manifest at startup, so a file goes within a tick of its deadline and nothing
+ * scans the upload directory. A file deleted earlier just finds nothing to do when it fires.
+ */
 @Service
 public class FileCleanupService {
 
-    private final Path uploadDir = Paths.get("uploads", "channels");
+    @Autowired
+    private ChannelFileStore channelFileStore;
 
-    // Run every 5 minutes to clean up ephemeral channel files
-    @Scheduled(fixedRate = 300000)
-    public void cleanupOldFiles() {
-        if (!Files.exists(uploadDir)) {
-            return;
+    @Value("${files.channel.ttl-minutes:5}")
+    private long ttlMinutes;
+
+    private TimingWheel<String> expiry;
+    private long startedAt;
+    private final LongAdder expired = new LongAdder();
+    // How long after its deadline a file was actually deleted
+    private final LatencyHistogram lateness = new LatencyHistogram();
+    private final Logger logger = Logger.getLogger(FileCleanupService.class.getName());
+
+    @PostConstruct
+    public void init() {
+        // 1 s ticks, one revolution per 512 s
+        expiry = new TimingWheel<>("file-expiry", 1000, 512, this::expire);
+        long now = startedAt = System.currentTimeMillis();
+        List<ChannelFileStore.StoredFile> stored = channelFileStore.addListener(file -> expiry.schedule(file.fileId(), ttlMs()));
+        for (ChannelFileStore.StoredFile file : stored) {
+            expiry.schedule(file.fileId(), Math.max(0, file.createdAt() + ttlMs() - now));
         }
+    }
 
-        Instant cutoffTime = Instant.now().minus(5, ChronoUnit.MINUTES);
-
-        try (Stream<Path> files = Files.walk(uploadDir)) {
-            files.filter(Files::isRegularFile).forEach(file -> {
-                try {
-                    BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
-                    Instant creationTime = attrs.creationTime().toInstant();
-
-                    if (creationTime.isBefore(cutoffTime)) {
-                        Files.delete(file);
-                        System.out.println("Cleaned up expired file: " + file.getFileName());
-                    }
-                } catch (IOException e) {
-                    System.err.println("Failed to attributes or delete file: " + file.getFileName());
-                }
-            });
+    private long ttlMs() {
+        return TimeUnit.MINUTES.toMillis(ttlMinutes);
+    }
+
+    private void expire(String fileId) {
+        ChannelFileStore.StoredFile file = channelFileStore.get(fileId);
+        if (file == null) {
+            return;
+        }
+        long late = System.currentTimeMillis() - (file.createdAt() + ttlMs());
+        if (late < 0) {
+            expiry.schedule(fileId, -late);
+            return;
+        }
+        try {
+            if (channelFileStore.delete(fileId)) {
+                expired.increment();
+                // Files that expired while the server was down count from startup
+                lateness.record(Math.min(late, System.currentTimeMillis() - startedAt));
+                logger.info("Cleaned up expired file: " + fileId);
+            }
         } catch (IOException e) {
-            System.err.println("Failed to walk upload directory for cleanup: " + e.getMessage());
+            logger.warning("Failed to delete expired file " + fileId + ": " + e.getMessage());
         }
     }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pending", expiry.size());
+        stats.put("expired", expired.sum());
+        stats.put("lateMs", lateness.getStats());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        expiry.stop();
+    }
 }
@@ -0,0 +1,108 @@
+package dev.lunov.p2p_server.service;
+
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What a download needs to know about a stored file: size, modification time, a strong ETag and
+ * the content type. The ETag is the SHA-256 of the content, handed over by whoever wrote the
+ * file while the bytes went by, so a download costs one {@code stat} and no hashing or type
+ * probing. A file changed behind our back (other size or modification time), or one written
+ * before this process started, is hashed and probed once on its first download.
+ */
+@Service
+public class FileMetadataCache {
+
+    public record FileInfo(Path path, long size, long lastModified, String etag, String contentType) {
+
+        public FileInfo withContentType(String contentType) {
+            return new FileInfo(path, size, lastModified, etag, contentType);
+        }
+    }
+
+    private final Map<Path, FileInfo> files = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder computed = new LongAdder();
+
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Records a file just written.
+     *
+     * @param digest      SHA-256 of its content
+     * @param contentType {@code null} to probe it once now
+     */
+    public FileInfo put(Path path, byte[] digest, String contentType) throws IOException {
+        Path key = path.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        FileInfo info = new FileInfo(key, attributes.size(), attributes.lastModifiedTime().toMillis(),
+                "\"" + HexFormat.of().formatHex(digest) + "\"", contentType != null ? contentType : probe(key));
+        files.put(key, info);
+        return info;
+    }
+
+    /**
+     * @return {@code null} if {@code path} is not a regular file
+     */
+    public FileInfo get(Path path) throws IOException {
+        Path key = path.toAbsolutePath().normalize();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(key, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            files.remove(key);
+            return null;
+        }
+        if (!attributes.isRegularFile()) {
+            return null;
+        }
+        FileInfo cached = files.get(key);
+        if (cached != null && cached.size() == attributes.size()
+                && cached.lastModified() == attributes.lastModifiedTime().toMillis()) {
+            hits.increment();
+            return cached;
+        }
+        MessageDigest digest = sha256();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(key), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        computed.increment();
+        return put(key, digest.digest(), cached != null ? cached.contentType() : null);
+    }
+
+    public void evict(Path path) {
+        files.remove(path.toAbsolutePath().normalize());
+    }
+
+    private static String probe(Path path) throws IOException {
+        String contentType = Files.probeContentType(path);
+        return contentType != null ? contentType : "application/octet-stream";
+    }
+
+    public Map<String, Object> getStats() {
+        return Map.of(
+                "files", files.size(),
+                "hits", hits.sum(),
+                "computed", computed.sum());
+    }
+}
@@ -0,0 +1,139 @@
+package dev.lunov.p2p_server.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Optional coalescing of trickle ICE candidates. The first candidate for a target goes out
+ * immediately and opens a short window; candidates arriving inside the window are sent
+ * together as one frame whose body is a JSON array and which carries an {@code ice-batch}
+ * header with the candidate count. The window is re-armed while candidates keep coming.
+ */
+@Service
+public class IceCoalescer {
+
+    public static final String BATCH_HEADER = "ice-batch";
+
+    @Autowired
+    private SignalRouter signalRouter;
+
+    @Value("${signaling.ice-coalescing.enabled:false}")
+    private boolean enabled;
+
+    @Value("${signaling.ice-coalescing.window-ms:5}")
+    private long windowMs;
+
+    // Per target: the open window's batch, or null, and the frames built for it in send order
+    private static class Target {
+        List<String> batch;
+        final Queue<Frame> outbox = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean sending = new AtomicBoolean();
+    }
+
+    private record Frame(String payload, Map<String, String> headers) {
+    }
+
+    private final Map<String, Target> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ice-coalescer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LongAdder candidatesIn = new LongAdder();
+    private final LongAdder framesOut = new LongAdder();
+
+    public void relay(String destination, String candidate) {
+        candidatesIn.increment();
+        if (!enabled) {
+            framesOut.increment();
+            signalRouter.send(destination, candidate);
+            return;
+        }
+        // Frames are built and queued under compute(), which fixes their order, but sent after it returns
+        Target target = pending.compute(destination, (key, current) -> {
+            Target t = current != null ? current : new Target();
+            if (t.batch == null) {
+                t.outbox.add(new Frame(candidate, Map.of()));
+                t.batch = new ArrayList<>();
+                flusher.schedule(() -> flush(destination), windowMs, TimeUnit.MILLISECONDS);
+            } else {
+                t.batch.add(candidate);
+            }
+            return t;
+        });
+        drain(destination, target);
+    }
+
+    private void flush(String destination) {
+        Target target = pending.computeIfPresent(destination, (key, t) -> {
+            if (t.batch == null || t.batch.isEmpty()) {
+                t.batch = null;
+                return t.outbox.isEmpty() ? null : t;
+            }
+            if (t.batch.size() == 1) {
+                t.outbox.add(new Frame(t.batch.get(0), Map.of()));
+            } else {
+                t.outbox.add(new Frame("[" + String.join(",", t.batch) + "]",
+                        Map.of(BATCH_HEADER, String.valueOf(t.batch.size()))));
+            }
+            t.batch = new ArrayList<>();
+            flusher.schedule(() -> flush(destination), windowMs, TimeUnit.MILLISECONDS);
+            return t;
+        });
+        if (target != null) {
+            drain(destination, target);
+        }
+    }
+
+    /**
+     * Sends the target's frames in the order they were queued; one thread at a time drains, and a frame
+     * queued while it does is picked up before it lets go.
+     */
+    private void drain(String destination, Target target) {
+        while (!target.outbox.isEmpty() && target.sending.compareAndSet(false, true)) {
+            try {
+                Frame frame;
+                while ((frame = target.outbox.poll()) != null) {
+                    framesOut.increment();
+                    if (frame.headers().isEmpty()) {
+                        signalRouter.send(destination, frame.payload());
+                    } else {
+                        signalRouter.send(destination, frame.payload(), frame.headers());
+                    }
+                }
+            } finally {
+                target.sending.set(false);
+            }
+        }
+        // Drop a target whose window closed while its last frames were still going out
+        pending.computeIfPresent(destination, (key, t) -> t == target && t.batch == null && t.outbox.isEmpty() ? null : t);
+    }
+
+    public Map<String, Object> getStats() {
+        return Map.of(
+                "enabled", enabled,
+                "windowMs", windowMs,
+                "candidatesIn", candidatesIn.sum(),
+                "framesOut", framesOut.sum());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdownNow();
+    }
+}
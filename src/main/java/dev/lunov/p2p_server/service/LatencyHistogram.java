@@ -0,0 +1,66 @@
+package dev.lunov.p2p_server.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram over fixed 1-2-5 millisecond buckets. Percentiles are reported
+ * as the upper bound of the bucket they fall in, which is accurate enough for dashboards and
+ * costs one array increment per sample.
+ */
+public class LatencyHistogram {
+
+    private static final long[] BOUNDS_MS = {
+            1, 2, 5, 10, 20, 50, 100, 200, 500, 1_000, 2_000, 5_000, 10_000, 20_000, 60_000, Long.MAX_VALUE};
+
+    private final AtomicLongArray counts = new AtomicLongArray(BOUNDS_MS.length);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sumMs = new LongAdder();
+    private final AtomicLong maxMs = new AtomicLong();
+
+    public void record(long ms) {
+        long value = Math.max(0, ms);
+        int bucket = 0;
+        while (value > BOUNDS_MS[bucket]) {
+            bucket++;
+        }
+        counts.incrementAndGet(bucket);
+        total.increment();
+        sumMs.add(value);
+        maxMs.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * @return the upper bound of the bucket holding the given quantile, capped at the maximum seen
+     */
+    public long percentile(double quantile) {
+        long n = total.sum();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * n);
+        long seen = 0;
+        for (int i = 0; i < BOUNDS_MS.length; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(BOUNDS_MS[i], maxMs.get());
+            }
+        }
+        return maxMs.get();
+    }
+
+    public Map<String, Object> getStats() {
+        long n = total.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", n);
+        stats.put("meanMs", n == 0 ? 0 : sumMs.sum() / n);
+        stats.put("p50Ms", percentile(0.50));
+        stats.put("p90Ms", percentile(0.90));
+        stats.put("p99Ms", percentile(0.99));
+        stats.put("maxMs", maxMs.get());
+        return stats;
+    }
+}
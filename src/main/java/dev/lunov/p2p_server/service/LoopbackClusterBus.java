@@ -0,0 +1,144 @@
+package dev.lunov.p2p_server.service;
+
+import dev.lunov.p2p_server.model.ClusterMessage;
+import jakarta.annotation.PostConstruct;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Joins nodes running in the same JVM, e.g. several application contexts in a test or
+ * benchmark. Nodes on the same named network see each other. Each node handles its incoming
+ * messages on its own thread, in arrival order, so a node never runs another node's work and
+ * nodes scale like separate processes would. Payloads are shared, not copied; receivers must
+ * not modify them.
+ */
+public class LoopbackClusterBus implements ClusterBus {
+
+    private static final Map<String, Map<String, LoopbackClusterBus>> NETWORKS = new ConcurrentHashMap<>();
+
+    private final String network;
+    private final String nodeId;
+    private final Map<String, LoopbackClusterBus> nodes;
+    private final ExecutorService inbox;
+    private volatile Consumer<ClusterMessage> receiver = message -> { };
+    private final Map<ClusterMessage.Type, LongAdder> sent = counters();
+    private final Map<ClusterMessage.Type, LongAdder> received = counters();
+    private final Logger logger = Logger.getLogger(LoopbackClusterBus.class.getName());
+
+    public LoopbackClusterBus(String network, String nodeId) {
+        this.network = network;
+        this.nodeId = nodeId;
+        this.nodes = NETWORKS.computeIfAbsent(network, k -> new ConcurrentHashMap<>());
+        this.inbox = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "cluster-" + nodeId);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Joins the network; not done in the constructor so other nodes never see a half-built bus.
+     */
+    @PostConstruct
+    public void join() {
+        if (nodes.putIfAbsent(nodeId, this) != null) {
+            inbox.shutdown();
+            throw new IllegalStateException("Node " + nodeId + " already joined loopback network " + network);
+        }
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public Set<String> getNodes() {
+        return new TreeSet<>(nodes.keySet());
+    }
+
+    @Override
+    public void publish(ClusterMessage message) {
+        for (LoopbackClusterBus node : nodes.values()) {
+            if (node != this) {
+                node.enqueue(message);
+            }
+        }
+        sent.get(message.type()).increment();
+    }
+
+    @Override
+    public boolean send(String nodeId, ClusterMessage message) {
+        LoopbackClusterBus node = nodes.get(nodeId);
+        if (node == null || node == this) {
+            return false;
+        }
+        node.enqueue(message);
+        sent.get(message.type()).increment();
+        return true;
+    }
+
+    private void enqueue(ClusterMessage message) {
+        try {
+            inbox.execute(() -> {
+                received.get(message.type()).increment();
+                try {
+                    receiver.accept(message);
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Node " + nodeId + " failed to handle " + message.type() + " from " + message.sourceNode(), e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // This node is shutting down
+        }
+    }
+
+    @Override
+    public void setReceiver(Consumer<ClusterMessage> receiver) {
+        this.receiver = receiver;
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", "loopback");
+        stats.put("network", network);
+        stats.put("nodeId", nodeId);
+        stats.put("nodes", getNodes());
+        stats.put("sent", sums(sent));
+        stats.put("received", sums(received));
+        return stats;
+    }
+
+    private static Map<ClusterMessage.Type, LongAdder> counters() {
+        Map<ClusterMessage.Type, LongAdder> counters = new EnumMap<>(ClusterMessage.Type.class);
+        for (ClusterMessage.Type type : ClusterMessage.Type.values()) {
+            counters.put(type, new LongAdder());
+        }
+        return counters;
+    }
+
+    private static Map<ClusterMessage.Type, Long> sums(Map<ClusterMessage.Type, LongAdder> counters) {
+        Map<ClusterMessage.Type, Long> sums = new EnumMap<>(ClusterMessage.Type.class);
+        counters.forEach((type, count) -> sums.put(type, count.sum()));
+        return sums;
+    }
+
+    @Override
+    public void close() {
+        nodes.remove(nodeId, this);
+        inbox.shutdown();
+    }
+}
@@ -0,0 +1,416 @@
+package dev.lunov.p2p_server.service;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Store-and-forward mailbox for direct messages to peers that are offline.
+ * <p>
+ * Messages are appended to a log of memory-mapped {@link MailboxSegment}s under
+ * {@code mailbox.dir}; the heap only holds, per recipient, the locations of its pending records.
+ * Once the peer has registered and subscribed to {@code /topic/message/<peerId>}, it is sent its
+ * oldest pending messages as one frame on that topic, with a {@code mailbox-batch} header and a
+ * JSON array body of {@code {"seq","sentAt","message"}}; binary messages carry their bytes as
+ * base64 with an extra {@code "encoding":"base64"}. It acknowledges the highest sequence
+ * number it has processed with {@code /app/mailbox/ack}; acknowledged
+ * records are flagged and the next batch is sent, so normally one batch per peer is in flight.
+ * A batch may be sent again (e.g. after a reconnect), so clients should skip sequence numbers
+ * they have already seen.
+ * <p>
+ * Segments with nothing left to deliver are deleted; sparse ones are compacted by copying their
+ * remaining records to the head of the log. Records past {@code retention-hours}, the oldest
+ * records of a peer over {@code max-messages-per-peer}, and whole segments beyond
+ * {@code max-size-mb} are dropped.
+ */
+@Service
+public class Mailbox {
+
+    public static final String BATCH_HEADER = "mailbox-batch";
+
+    @Autowired
+    private SignalRouter signalRouter;
+
+    @Value("${mailbox.dir:mailbox}")
+    private String dir;
+
+    @Value("${mailbox.segment-size-mb:64}")
+    private int segmentSizeMb;
+
+    @Value("${mailbox.max-size-mb:1024}")
+    private int maxSizeMb;
+
+    @Value("${mailbox.retention-hours:72}")
+    private long retentionHours;
+
+    @Value("${mailbox.max-messages-per-peer:1000}")
+    private int maxMessagesPerPeer;
+
+    @Value("${mailbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${mailbox.batch-bytes:65536}")
+    private int batchBytes;
+
+    private Path root;
+    private final TreeMap<Long, MailboxSegment> segments = new TreeMap<>();
+    private MailboxSegment active;
+    private final Map<String, Inbox> inboxes = new HashMap<>();
+    private long nextSeq = 1;
+
+    private long appended;
+    private long delivered;
+    private long dropped;
+    private final Logger logger = Logger.getLogger(Mailbox.class.getName());
+
+    /**
+     * Pending record locations of one recipient in sequence order, as a ring of
+     * {@code segmentId << 32 | offset}.
+     */
+    private static final class Inbox {
+        long[] locations = new long[8];
+        int head;
+        int size;
+
+        void add(long location) {
+            if (size == locations.length) {
+                long[] grown = new long[locations.length * 2];
+                for (int i = 0; i < size; i++) {
+                    grown[i] = get(i);
+                }
+                locations = grown;
+                head = 0;
+            }
+            locations[(head + size++) % locations.length] = location;
+        }
+
+        long get(int i) {
+            return locations[(head + i) % locations.length];
+        }
+
+        void set(int i, long location) {
+            locations[(head + i) % locations.length] = location;
+        }
+
+        long removeFirst() {
+            long location = locations[head];
+            head = (head + 1) % locations.length;
+            size--;
+            return location;
+        }
+    }
+
+    @PostConstruct
+    public synchronized void init() throws IOException {
+        root = Paths.get(dir);
+        Files.createDirectories(root);
+        List<Path> files;
+        try (Stream<Path> list = Files.list(root)) {
+            files = list.filter(path -> path.getFileName().toString().endsWith(".seg")).sorted().toList();
+        }
+        for (Path file : files) {
+            MailboxSegment segment = MailboxSegment.open(root, MailboxSegment.idOf(file), 0);
+            segments.put(segment.id, segment);
+            int offset = 0;
+            for (int length; (length = segment.length(offset)) > 0; offset += length) {
+                nextSeq = Math.max(nextSeq, segment.seq(offset) + 1);
+                if (segment.isLive(offset)) {
+                    segment.liveRecords++;
+                    segment.liveBytes += length;
+                    inboxes.computeIfAbsent(segment.recipient(offset), k -> new Inbox()).add(location(segment.id, offset));
+                }
+            }
+            segment.writePosition = offset;
+        }
+        active = segments.isEmpty() ? newSegment(0) : segments.lastEntry().getValue();
+        for (MailboxSegment segment : new ArrayList<>(segments.values())) {
+            if (segment != active && segment.liveRecords == 0) {
+                deleteSegment(segment);
+            }
+        }
+        // Segments are scanned in id order, but compaction may have moved older records forward
+        inboxes.values().forEach(this::sortBySeq);
+        if (!inboxes.isEmpty()) {
+            logger.info("Recovered " + pendingMessages() + " pending messages for " + inboxes.size() + " peers");
+        }
+    }
+
+    /**
+     * Stores {@code message} for {@code recipient}.
+     *
+     * @return the message's sequence number
+     */
+    public long append(String recipient, String message) {
+        return append(recipient, message.getBytes(StandardCharsets.UTF_8), false);
+    }
+
+    /**
+     * Stores an already encoded message for {@code recipient}.
+     *
+     * @param binary whether {@code payload} is opaque bytes rather than UTF-8 text
+     * @return the message's sequence number
+     */
+    public synchronized long append(String recipient, byte[] payload, boolean binary) {
+        byte[] recipientBytes = recipient.getBytes(StandardCharsets.UTF_8);
+        long seq = nextSeq++;
+        long sentAt = System.currentTimeMillis();
+        int offset = active.append(seq, sentAt, recipientBytes, payload, binary);
+        if (offset < 0) {
+            if (MailboxSegment.HEADER_BYTES + recipientBytes.length + payload.length + 4 > segmentBytes()) {
+                throw new IllegalArgumentException("Message of " + payload.length + " bytes does not fit a mailbox segment");
+            }
+            roll();
+            offset = active.append(seq, sentAt, recipientBytes, payload, binary);
+        }
+        Inbox inbox = inboxes.computeIfAbsent(recipient, k -> new Inbox());
+        inbox.add(location(active.id, offset));
+        while (inbox.size > maxMessagesPerPeer) {
+            release(inbox.removeFirst());
+            dropped++;
+        }
+        appended++;
+        return seq;
+    }
+
+    /**
+     * Sends the oldest pending messages of {@code peerId}, if any.
+     */
+    public void drain(String peerId) {
+        String batch;
+        int count;
+        synchronized (this) {
+            Inbox inbox = inboxes.get(peerId);
+            if (inbox == null || inbox.size == 0) {
+                return;
+            }
+            JsonStringEncoder encoder = JsonStringEncoder.getInstance();
+            StringBuilder json = new StringBuilder("[");
+            for (count = 0; count < inbox.size && count < batchSize && (count == 0 || json.length() < batchBytes); count++) {
+                long location = inbox.get(count);
+                MailboxSegment segment = segments.get(segmentOf(location));
+                int offset = offsetOf(location);
+                if (count > 0) {
+                    json.append(',');
+                }
+                json.append("{\"seq\":").append(segment.seq(offset))
+                        .append(",\"sentAt\":").append(segment.sentAt(offset))
+                        .append(",\"message\":\"");
+                if (segment.isBinary(offset)) {
+                    json.append(Base64.getEncoder().encodeToString(segment.payload(offset)))
+                            .append("\",\"encoding\":\"base64\"}");
+                } else {
+                    encoder.quoteAsString(new String(segment.payload(offset), StandardCharsets.UTF_8), json);
+                    json.append("\"}");
+                }
+            }
+            batch = json.append(']').toString();
+        }
+        signalRouter.send("/topic/message/" + peerId, batch, Map.of(BATCH_HEADER, String.valueOf(count)));
+    }
+
+    /**
+     * Releases every pending message of {@code peerId} up to and including {@code seq}, then
+     * sends the next batch.
+     */
+    public void ack(String peerId, long seq) {
+        synchronized (this) {
+            Inbox inbox = inboxes.get(peerId);
+            if (inbox == null) {
+                return;
+            }
+            while (inbox.size > 0 && seqAt(inbox.get(0)) <= seq) {
+                release(inbox.removeFirst());
+                delivered++;
+            }
+            if (inbox.size == 0) {
+                inboxes.remove(peerId);
+                return;
+            }
+        }
+        drain(peerId);
+    }
+
+    @Scheduled(fixedRate = 60000)
+    public synchronized void maintain() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(retentionHours);
+        for (Iterator<Inbox> it = inboxes.values().iterator(); it.hasNext(); ) {
+            Inbox inbox = it.next();
+            while (inbox.size > 0 && sentAtOf(inbox.get(0)) < cutoff) {
+                release(inbox.removeFirst());
+                dropped++;
+            }
+            if (inbox.size == 0) {
+                it.remove();
+            }
+        }
+        for (MailboxSegment segment : new ArrayList<>(segments.values())) {
+            if (segment != active && segment.liveBytes < segment.capacity() / 4) {
+                compact(segment);
+            }
+        }
+        active.force();
+    }
+
+    /**
+     * Moves the remaining records of a sparse segment to the head of the log and deletes it.
+     */
+    private void compact(MailboxSegment segment) {
+        for (Inbox inbox : inboxes.values()) {
+            for (int i = 0; i < inbox.size && segment.liveRecords > 0; i++) {
+                long location = inbox.get(i);
+                if (segmentOf(location) != segment.id) {
+                    continue;
+                }
+                int offset = active.copyFrom(segment, offsetOf(location));
+                if (offset < 0) {
+                    // The head segment is full; finish once appends have rolled the log
+                    return;
+                }
+                segment.markDone(offsetOf(location));
+                inbox.set(i, location(active.id, offset));
+            }
+        }
+        if (segment.liveRecords == 0) {
+            deleteSegment(segment);
+        }
+    }
+
+    private void roll() {
+        active.force();
+        long nextId = active.id + 1;
+        while ((long) (segments.size() + 1) * segmentBytes() > (long) maxSizeMb * 1024 * 1024 && segments.size() > 1) {
+            dropOldestSegment();
+        }
+        active = newSegment(nextId);
+    }
+
+    private void dropOldestSegment() {
+        MailboxSegment oldest = segments.firstEntry().getValue();
+        int lost = oldest.liveRecords;
+        for (Iterator<Inbox> it = inboxes.values().iterator(); it.hasNext(); ) {
+            Inbox inbox = it.next();
+            Inbox kept = new Inbox();
+            while (inbox.size > 0) {
+                long location = inbox.removeFirst();
+                if (segmentOf(location) != oldest.id) {
+                    kept.add(location);
+                }
+            }
+            inbox.locations = kept.locations;
+            inbox.head = kept.head;
+            inbox.size = kept.size;
+            if (inbox.size == 0) {
+                it.remove();
+            }
+        }
+        dropped += lost;
+        logger.warning("Mailbox over " + maxSizeMb + " MB, dropped segment " + oldest.id + " with " + lost + " undelivered messages");
+        deleteSegment(oldest);
+    }
+
+    private void release(long location) {
+        MailboxSegment segment = segments.get(segmentOf(location));
+        segment.markDone(offsetOf(location));
+        if (segment.liveRecords == 0 && segment != active) {
+            deleteSegment(segment);
+        }
+    }
+
+    private MailboxSegment newSegment(long id) {
+        try {
+            MailboxSegment segment = MailboxSegment.open(root, id, segmentBytes());
+            segments.put(id, segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create mailbox segment " + id, e);
+        }
+    }
+
+    private void deleteSegment(MailboxSegment segment) {
+        segments.remove(segment.id);
+        try {
+            segment.delete();
+        } catch (IOException e) {
+            logger.warning("Failed to delete mailbox segment " + segment.path + ": " + e.getMessage());
+        }
+    }
+
+    private void sortBySeq(Inbox inbox) {
+        List<Long> locations = new ArrayList<>(inbox.size);
+        for (int i = 0; i < inbox.size; i++) {
+            locations.add(inbox.get(i));
+        }
+        locations.sort((a, b) -> Long.compare(seqAt(a), seqAt(b)));
+        for (int i = 0; i < locations.size(); i++) {
+            inbox.set(i, locations.get(i));
+        }
+    }
+
+    private long seqAt(long location) {
+        return segments.get(segmentOf(location)).seq(offsetOf(location));
+    }
+
+    private long sentAtOf(long location) {
+        return segments.get(segmentOf(location)).sentAt(offsetOf(location));
+    }
+
+    private int segmentBytes() {
+        return segmentSizeMb * 1024 * 1024;
+    }
+
+    private int pendingMessages() {
+        return inboxes.values().stream().mapToInt(inbox -> inbox.size).sum();
+    }
+
+    private static long location(long segmentId, int offset) {
+        return segmentId << 32 | offset;
+    }
+
+    private static long segmentOf(long location) {
+        return location >>> 32;
+    }
+
+    private static int offsetOf(long location) {
+        return (int) location;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("segments", segments.size());
+        stats.put("diskBytes", (long) segments.size() * segmentBytes());
+        stats.put("liveBytes", segments.values().stream().mapToLong(segment -> segment.liveBytes).sum());
+        stats.put("recipients", inboxes.size());
+        stats.put("pending", pendingMessages());
+        stats.put("appended", appended);
+        stats.put("delivered", delivered);
+        stats.put("dropped", dropped);
+        return stats;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        segments.values().forEach(MailboxSegment::force);
+    }
+}
@@ -0,0 +1,151 @@
+package dev.lunov.p2p_server.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * One fixed-size, memory-mapped file of the mailbox log. Records are appended back to back:
+ * <pre>
+ * int length | byte state | long seq | long sentAt | short recipientLength | recipient | payload
+ * </pre>
+ * The length is written last, so a record torn by a crash reads as the end of the segment.
+ * The state byte holds flag bits: {@link #DONE} for delivered records, whose space is reclaimed
+ * when the whole segment is dropped or compacted by {@link Mailbox}, and {@link #BINARY} for
+ * payloads that are not UTF-8 text.
+ */
+final class MailboxSegment {
+
+    static final int HEADER_BYTES = 4 + 1 + 8 + 8 + 2;
+    static final byte LIVE = 0;
+    static final byte DONE = 1;
+    static final byte BINARY = 2;
+
+    private static final int STATE = 4;
+    private static final int SEQ = 5;
+    private static final int SENT_AT = 13;
+    private static final int RECIPIENT_LENGTH = 21;
+
+    final long id;
+    final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    int writePosition;
+    int liveRecords;
+    long liveBytes;
+
+    private MailboxSegment(long id, Path path, FileChannel channel, MappedByteBuffer buffer) {
+        this.id = id;
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+    }
+
+    static MailboxSegment open(Path dir, long id, int size) throws IOException {
+        Path path = dir.resolve(String.format("%016d.seg", id));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < size) {
+            channel.write(ByteBuffer.allocate(1), size - 1);
+        }
+        return new MailboxSegment(id, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+    }
+
+    static long idOf(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - ".seg".length()));
+    }
+
+    int capacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * @return the record's offset, or {@code -1} if it does not fit
+     */
+    int append(long seq, long sentAt, byte[] recipient, byte[] payload, boolean binary) {
+        int length = HEADER_BYTES + recipient.length + payload.length;
+        int offset = writePosition;
+        // Leave room for the zero length that terminates the segment
+        if (offset + length + 4 > buffer.capacity()) {
+            return -1;
+        }
+        buffer.put(offset + STATE, binary ? BINARY : LIVE);
+        buffer.putLong(offset + SEQ, seq);
+        buffer.putLong(offset + SENT_AT, sentAt);
+        buffer.putShort(offset + RECIPIENT_LENGTH, (short) recipient.length);
+        buffer.put(offset + HEADER_BYTES, recipient);
+        buffer.put(offset + HEADER_BYTES + recipient.length, payload);
+        buffer.putInt(offset, length);
+        writePosition = offset + length;
+        liveRecords++;
+        liveBytes += length;
+        return offset;
+    }
+
+    /**
+     * Copies a live record from another segment, keeping its sequence number, timestamp and flags.
+     *
+     * @return the new offset, or {@code -1} if it does not fit
+     */
+    int copyFrom(MailboxSegment source, int sourceOffset) {
+        return append(source.seq(sourceOffset), source.sentAt(sourceOffset),
+                source.recipient(sourceOffset).getBytes(StandardCharsets.UTF_8), source.payload(sourceOffset),
+                source.isBinary(sourceOffset));
+    }
+
+    int length(int offset) {
+        return offset + 4 > buffer.capacity() ? 0 : buffer.getInt(offset);
+    }
+
+    boolean isLive(int offset) {
+        return (buffer.get(offset + STATE) & DONE) == 0;
+    }
+
+    boolean isBinary(int offset) {
+        return (buffer.get(offset + STATE) & BINARY) != 0;
+    }
+
+    long seq(int offset) {
+        return buffer.getLong(offset + SEQ);
+    }
+
+    long sentAt(int offset) {
+        return buffer.getLong(offset + SENT_AT);
+    }
+
+    String recipient(int offset) {
+        byte[] recipient = new byte[buffer.getShort(offset + RECIPIENT_LENGTH)];
+        buffer.get(offset + HEADER_BYTES, recipient);
+        return new String(recipient, StandardCharsets.UTF_8);
+    }
+
+    byte[] payload(int offset) {
+        int recipientLength = buffer.getShort(offset + RECIPIENT_LENGTH);
+        byte[] payload = new byte[length(offset) - HEADER_BYTES - recipientLength];
+        buffer.get(offset + HEADER_BYTES + recipientLength, payload);
+        return payload;
+    }
+
+    void markDone(int offset) {
+        if (isLive(offset)) {
+            buffer.put(offset + STATE, (byte) (buffer.get(offset + STATE) | DONE));
+            liveRecords--;
+            liveBytes -= length(offset);
+        }
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void delete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,123 @@
+package dev.lunov.p2p_server.service;
+
+import dev.lunov.p2p_server.dto.PeerPage;
+import dev.lunov.p2p_server.model.Peer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Sorted index over online peers, keyed by lower-cased display name then id. Platform and
+ * status get their own sorted slices so a filtered query walks only matching peers. Updated
+ * incrementally by {@link PresenceService} under its lock; queries are lock-free and never
+ * touch the registry map.
+ */
+public class PeerDirectory {
+
+    public static final int MAX_PAGE_SIZE = 200;
+
+    static final char SEPARATOR = '\u0000';
+    static final char UPPER_BOUND = '\uffff';
+
+    private final ConcurrentSkipListMap<String, Peer> byName = new ConcurrentSkipListMap<>();
+    private final Map<String, ConcurrentSkipListMap<String, Peer>> byPlatform = new ConcurrentHashMap<>();
+    private final Map<String, ConcurrentSkipListMap<String, Peer>> byStatus = new ConcurrentHashMap<>();
+
+    void put(Peer previous, Peer peer) {
+        if (previous != null) {
+            remove(previous);
+        }
+        String key = key(peer);
+        byName.put(key, peer);
+        byPlatform.computeIfAbsent(normalize(peer.platform()), k -> new ConcurrentSkipListMap<>()).put(key, peer);
+        byStatus.computeIfAbsent(normalize(peer.status()), k -> new ConcurrentSkipListMap<>()).put(key, peer);
+    }
+
+    void remove(Peer peer) {
+        String key = key(peer);
+        byName.remove(key);
+        removeFrom(byPlatform, normalize(peer.platform()), key);
+        removeFrom(byStatus, normalize(peer.status()), key);
+    }
+
+    /**
+     * @param prefix   case-insensitive display name prefix, or {@code null} for all peers
+     * @param platform exact platform match, or {@code null}
+     * @param status   exact status match, or {@code null}
+     * @param cursor   {@code nextCursor} of the previous page, or {@code null} for the first page
+     */
+    public PeerPage search(String prefix, String platform, String status, String cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        String platformKey = platform == null || platform.isBlank() ? null : normalize(platform);
+        String statusKey = status == null || status.isBlank() ? null : normalize(status);
+
+        ConcurrentSkipListMap<String, Peer> source = byName;
+        if (platformKey != null) {
+            source = byPlatform.get(platformKey);
+        } else if (statusKey != null) {
+            source = byStatus.get(statusKey);
+        }
+        if (source == null) {
+            return new PeerPage(List.of(), null);
+        }
+
+        String from = prefix == null ? "" : normalize(prefix);
+        NavigableMap<String, Peer> range = source.subMap(from, true, from + UPPER_BOUND, false);
+        String after = decodeCursor(cursor);
+        if (after != null) {
+            range = range.tailMap(after, false);
+        }
+
+        List<Peer> page = new ArrayList<>(pageSize);
+        String lastKey = null;
+        for (Map.Entry<String, Peer> entry : range.entrySet()) {
+            Peer peer = entry.getValue();
+            if (statusKey != null && !statusKey.equals(normalize(peer.status()))) {
+                continue;
+            }
+            if (page.size() == pageSize) {
+                return new PeerPage(page, encodeCursor(lastKey));
+            }
+            page.add(peer);
+            lastKey = entry.getKey();
+        }
+        return new PeerPage(page, null);
+    }
+
+    private static void removeFrom(Map<String, ConcurrentSkipListMap<String, Peer>> index, String value, String key) {
+        index.computeIfPresent(value, (k, slice) -> {
+            slice.remove(key);
+            return slice.isEmpty() ? null : slice;
+        });
+    }
+
+    private static String key(Peer peer) {
+        return normalize(peer.displayName()) + SEPARATOR + peer.id();
+    }
+
+    static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    static String encodeCursor(String key) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
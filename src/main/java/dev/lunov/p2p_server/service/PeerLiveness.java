@@ -0,0 +1,179 @@
+package dev.lunov.p2p_server.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Evicts peers whose connection went quiet without closing, e.g. a phone that lost its network.
+ * Every inbound frame of a session that registered a peer, STOMP heart-beats included, counts
+ * as a sign of life. After {@code presence.liveness.stale-ms} of silence the peer is flagged
+ * {@code online=false}, published as a presence UPDATE; after {@code timeout-ms} it is removed
+ * like a disconnected peer and its session is closed. A frame arriving in between flags it
+ * online again.
+ * <p>
+ * Frames only stamp the session's last-seen time. Deadlines sit in a {@link TimingWheel} and
+ * are not moved on every frame: when one fires, a session that was seen since is simply
+ * scheduled again for the rest of its window.
+ */
+@Service
+public class PeerLiveness implements ChannelInterceptor {
+
+    // Lazy: this interceptor is registered by the WebSocket configuration these beans depend on
+    @Autowired
+    @Lazy
+    private PresenceService presenceService;
+
+    @Autowired
+    @Lazy
+    private SignalRouter signalRouter;
+
+    @Autowired
+    @Lazy
+    private CallRegistry callRegistry;
+
+    @Autowired
+    @Lazy
+    @Qualifier("clientOutboundChannel")
+    private MessageChannel clientOutboundChannel;
+
+    @Value("${presence.liveness.stale-ms:30000}")
+    private long staleMs;
+
+    @Value("${presence.liveness.timeout-ms:90000}")
+    private long timeoutMs;
+
+    private static final class Clock {
+        final String sessionId;
+        final String peerId;
+        volatile long lastSeen = System.currentTimeMillis();
+        final AtomicBoolean stale = new AtomicBoolean();
+
+        Clock(String sessionId, String peerId) {
+            this.sessionId = sessionId;
+            this.peerId = peerId;
+        }
+    }
+
+    private final Map<String, Clock> sessions = new ConcurrentHashMap<>();
+    private final Map<String, Clock> peers = new ConcurrentHashMap<>();
+    private TimingWheel<String> deadlines;
+    private final LongAdder markedStale = new LongAdder();
+    private final LongAdder recovered = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final Logger logger = Logger.getLogger(PeerLiveness.class.getName());
+
+    @PostConstruct
+    public void init() {
+        // 1 s ticks, one revolution per 256 s
+        deadlines = new TimingWheel<>("peer-liveness", 1000, 256, this::check);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        Clock clock = sessionId == null ? null : sessions.get(sessionId);
+        if (clock != null) {
+            clock.lastSeen = System.currentTimeMillis();
+            if (clock.stale.compareAndSet(true, false)) {
+                presenceService.setOnline(clock.peerId, true);
+                recovered.increment();
+            }
+        }
+        return message;
+    }
+
+    /**
+     * Starts watching the session a peer registered from; a previous session of the same peer
+     * is no longer watched.
+     */
+    public void track(String sessionId, String peerId) {
+        Clock clock = new Clock(sessionId, peerId);
+        Clock previous = peers.put(peerId, clock);
+        if (previous != null && !previous.sessionId.equals(sessionId)) {
+            untrack(previous.sessionId);
+        }
+        sessions.put(sessionId, clock);
+        deadlines.schedule(sessionId, staleMs);
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        untrack(event.getSessionId());
+    }
+
+    private void untrack(String sessionId) {
+        Clock clock = sessions.remove(sessionId);
+        if (clock != null) {
+            peers.remove(clock.peerId, clock);
+            deadlines.cancel(sessionId);
+        }
+    }
+
+    private void check(String sessionId) {
+        Clock clock = sessions.get(sessionId);
+        if (clock == null) {
+            return;
+        }
+        long idle = System.currentTimeMillis() - clock.lastSeen;
+        if (idle < staleMs) {
+            deadlines.schedule(sessionId, staleMs - idle);
+        } else if (idle < timeoutMs) {
+            if (clock.stale.compareAndSet(false, true)) {
+                presenceService.setOnline(clock.peerId, false);
+                markedStale.increment();
+            }
+            deadlines.schedule(sessionId, timeoutMs - idle);
+        } else {
+            evict(clock);
+        }
+    }
+
+    private void evict(Clock clock) {
+        untrack(clock.sessionId);
+        signalRouter.removeSession(clock.sessionId);
+        String peerId = presenceService.removeSession(clock.sessionId);
+        if (peerId != null) {
+            callRegistry.leave(peerId);
+        }
+        evicted.increment();
+        logger.info("Evicted peer " + clock.peerId + ": session " + clock.sessionId + " silent for over " + timeoutMs + " ms");
+        // The STOMP handler answers DISCONNECT_ACK with an ERROR frame and closes the connection
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.DISCONNECT_ACK);
+        accessor.setSessionId(clock.sessionId);
+        clientOutboundChannel.send(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+    }
+
+    public Map<String, Object> getStats() {
+        long stale = sessions.values().stream().filter(clock -> clock.stale.get()).count();
+        return Map.of(
+                "tracked", sessions.size(),
+                "stale", stale,
+                "markedStale", markedStale.sum(),
+                "recovered", recovered.sum(),
+                "evicted", evicted.sum());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        deadlines.stop();
+    }
+}
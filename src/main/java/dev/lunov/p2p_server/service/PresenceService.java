@@ -0,0 +1,260 @@
+package dev.lunov.p2p_server.service;
+
+import dev.lunov.p2p_server.model.ClusterMessage;
+import dev.lunov.p2p_server.model.Peer;
+import dev.lunov.p2p_server.model.PresenceDelta;
+import dev.lunov.p2p_server.model.PresenceSnapshot;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of online peers. Every mutation bumps a monotonically increasing version and
+ * publishes a single {@link PresenceDelta} to {@link #DELTA_TOPIC}. Clients load a
+ * {@link PresenceSnapshot} once and apply deltas on top of it; a version gap means a delta
+ * was missed and the client should fetch a fresh snapshot.
+ * <p>
+ * Peers registered on this node are published on the {@link ClusterBus}; peers registered on
+ * other nodes are applied with {@link #registerRemote} and remember their owning node, so a
+ * frame for them can be forwarded there. Each node numbers its own deltas. A peer that
+ * registers on a second node moves there.
+ */
+@Service
+public class PresenceService {
+
+    public static final String DELTA_TOPIC = "/topic/presence";
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private ClusterBus clusterBus;
+
+    private final Map<String, Peer> peers = new ConcurrentHashMap<>();
+    private final Map<String, String> sessionToPeer = new ConcurrentHashMap<>();
+    // The session each local peer registered from last; an older session no longer speaks for it
+    private final Map<String, String> peerToSession = new ConcurrentHashMap<>();
+    // Peers registered on another node -> that node's id
+    private final Map<String, String> remoteOwners = new ConcurrentHashMap<>();
+    private final PeerDirectory directory = new PeerDirectory();
+
+    // Written under this lock; deltas are published under the same lock so they leave in version order
+    private volatile long version;
+    private volatile EncodedPayload encodedPeers;
+    private volatile EncodedPayload encodedSnapshot;
+
+    public synchronized void register(Peer peer, String sessionId) {
+        String previousPeer = sessionToPeer.put(sessionId, peer.id());
+        if (previousPeer != null && !previousPeer.equals(peer.id()) && peerToSession.remove(previousPeer, sessionId)) {
+            // One peer per session: registering under another id replaces the old one
+            remove(previousPeer);
+        }
+        String previousSession = peerToSession.put(peer.id(), sessionId);
+        if (previousSession != null && !previousSession.equals(sessionId)) {
+            sessionToPeer.remove(previousSession, peer.id());
+        }
+        boolean movedHere = remoteOwners.remove(peer.id()) != null;
+        if (put(peer) || movedHere) {
+            publishUp(peer);
+        }
+    }
+
+    /**
+     * Flags a local peer as online or not without it registering again, e.g. when it stops
+     * sending heartbeats (see {@link PeerLiveness}).
+     *
+     * @return {@code false} if the peer is not local or already has that flag
+     */
+    public synchronized boolean setOnline(String peerId, boolean online) {
+        Peer peer = peers.get(peerId);
+        if (peer == null || peer.online() == online || remoteOwners.containsKey(peerId)) {
+            return false;
+        }
+        Peer updated = peer.withOnline(online);
+        put(updated);
+        publishUp(updated);
+        return true;
+    }
+
+    /**
+     * Applies a peer registered on {@code nodeId}; it replaces a local registration of the same id.
+     */
+    public synchronized void registerRemote(Peer peer, String nodeId) {
+        String session = peerToSession.remove(peer.id());
+        if (session != null) {
+            sessionToPeer.remove(session, peer.id());
+        }
+        remoteOwners.put(peer.id(), nodeId);
+        put(peer);
+    }
+
+    /**
+     * Removes a peer registered on this node; peers owned by other nodes are left alone.
+     */
+    public synchronized boolean remove(String peerId) {
+        if (peerId == null || remoteOwners.containsKey(peerId) || !drop(peerId)) {
+            return false;
+        }
+        String session = peerToSession.remove(peerId);
+        if (session != null) {
+            sessionToPeer.remove(session, peerId);
+        }
+        clusterBus.publish(ClusterMessage.state(ClusterMessage.Type.PEER_DOWN, clusterBus.getNodeId(), peerId, null));
+        return true;
+    }
+
+    public synchronized boolean removeRemote(String peerId, String nodeId) {
+        return remoteOwners.remove(peerId, nodeId) && drop(peerId);
+    }
+
+    /**
+     * Removes every peer owned by {@code nodeId}, e.g. when that node shuts down.
+     */
+    public synchronized int removeNode(String nodeId) {
+        List<String> owned = remoteOwners.entrySet().stream()
+                .filter(entry -> entry.getValue().equals(nodeId))
+                .map(Map.Entry::getKey)
+                .toList();
+        owned.forEach(peerId -> removeRemote(peerId, nodeId));
+        return owned.size();
+    }
+
+    private boolean put(Peer peer) {
+        Peer previous = peers.put(peer.id(), peer);
+        if (peer.equals(previous)) {
+            return false;
+        }
+        directory.put(previous, peer);
+        publish(previous == null ? PresenceDelta.Type.JOIN : PresenceDelta.Type.UPDATE, peer.id(), peer);
+        return true;
+    }
+
+    private void publishUp(Peer peer) {
+        clusterBus.publish(ClusterMessage.state(ClusterMessage.Type.PEER_UP, clusterBus.getNodeId(), peer.id(),
+                EncodedPayload.encode("peer", version, peer).bytes()));
+    }
+
+    private boolean drop(String peerId) {
+        Peer removed = peers.remove(peerId);
+        if (removed == null) {
+            return false;
+        }
+        directory.remove(removed);
+        publish(PresenceDelta.Type.LEAVE, peerId, null);
+        return true;
+    }
+
+    /**
+     * Drops the session mapping and the peer it registered.
+     *
+     * @return the removed peer id, or {@code null} if the session never registered or its peer
+     * has registered again from another session since
+     */
+    public synchronized String removeSession(String sessionId) {
+        String peerId = sessionToPeer.remove(sessionId);
+        if (peerId == null || !peerToSession.remove(peerId, sessionId)) {
+            return null;
+        }
+        remove(peerId);
+        return peerId;
+    }
+
+    /**
+     * @return the peer {@code sessionId} registered, or {@code null}
+     */
+    public String peerOf(String sessionId) {
+        return sessionId == null ? null : sessionToPeer.get(sessionId);
+    }
+
+    public synchronized PresenceSnapshot snapshot() {
+        return new PresenceSnapshot(version, new HashMap<>(peers));
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * The peer map as JSON, encoded at most once per version and shared by the
+     * {@code /topic/peers} fallback broadcast and the REST endpoints.
+     */
+    public EncodedPayload encodedPeers() {
+        EncodedPayload cached = encodedPeers;
+        if (cached != null && cached.version() == version) {
+            return cached;
+        }
+        PresenceSnapshot snapshot = snapshot();
+        EncodedPayload fresh = EncodedPayload.encode("peers", snapshot.version(), snapshot.peers());
+        synchronized (this) {
+            if (encodedPeers == null || encodedPeers.version() < fresh.version()) {
+                encodedPeers = fresh;
+            }
+        }
+        return fresh;
+    }
+
+    /**
+     * Same bytes as {@link #encodedPeers()} in the {@link PresenceSnapshot} shape, wrapped at
+     * most once per version.
+     */
+    public EncodedPayload encodedSnapshot() {
+        EncodedPayload peers = encodedPeers();
+        EncodedPayload cached = encodedSnapshot;
+        if (cached != null && cached.version() == peers.version()) {
+            return cached;
+        }
+        EncodedPayload fresh = peers.wrap("presence", "peers");
+        synchronized (this) {
+            if (encodedSnapshot == null || encodedSnapshot.version() < fresh.version()) {
+                encodedSnapshot = fresh;
+            }
+        }
+        return fresh;
+    }
+
+    public PeerDirectory getDirectory() {
+        return directory;
+    }
+
+    public Peer getPeer(String peerId) {
+        return peers.get(peerId);
+    }
+
+    public boolean isOnline(String peerId) {
+        return peers.containsKey(peerId);
+    }
+
+    /**
+     * @return the node a remote peer is registered on, or {@code null} for local and offline peers
+     */
+    public String ownerOf(String peerId) {
+        return peerId == null ? null : remoteOwners.get(peerId);
+    }
+
+    public boolean isLocal(String peerId) {
+        return isOnline(peerId) && !remoteOwners.containsKey(peerId);
+    }
+
+    public List<Peer> getLocalPeers() {
+        return peers.values().stream().filter(peer -> !remoteOwners.containsKey(peer.id())).toList();
+    }
+
+    public int getRemotePeerCount() {
+        return remoteOwners.size();
+    }
+
+    public Map<String, Peer> getPeers() {
+        return Collections.unmodifiableMap(peers);
+    }
+
+    private void publish(PresenceDelta.Type type, String peerId, Peer peer) {
+        version++;
+        messagingTemplate.convertAndSend(DELTA_TOPIC, new PresenceDelta(version, type, peerId, peer));
+    }
+}
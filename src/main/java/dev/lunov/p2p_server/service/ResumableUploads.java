@@ -0,0 +1,273 @@
+package dev.lunov.p2p_server.service;
+
+import dev.lunov.p2p_server.dto.UploadStatus;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Resumable uploads of channel files: an upload is created with its total length, then its
+ * bytes are appended in chunks, each starting at the offset received so far. A chunk is
+ * streamed from the request body to the upload's partial file through a fixed-size buffer, so
+ * memory per upload does not grow with the file. If the connection drops mid-chunk, whatever
+ * was written counts; the client asks for the offset and sends the rest.
+ * <p>
+ * When the last byte arrives the partial file is handed to the {@link ChannelFileStore}.
+ * Only the uploader sees an upload; to anyone else it does not exist. Uploads are kept in
+ * memory; ones idle for {@code files.upload.expire-minutes} are dropped with their partial
+ * file, and partial files left by a previous run are deleted at startup.
+ */
+@Service
+public class ResumableUploads {
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    @Autowired
+    private ChannelFileStore channelFileStore;
+
+    @Autowired
+    private StorageQuotas storageQuotas;
+
+    @Value("${files.upload.max-bytes:2147483648}")
+    private long maxBytes;
+
+    @Value("${files.upload.expire-minutes:60}")
+    private long expireMinutes;
+
+    private final Path partialDir;
+
+    private static final class Upload {
+        final String id;
+        final long length;
+        final String extension;
+        final Path partial;
+        // Holds the declared length against the uploader's and channel's quotas until completion
+        final StorageQuotas.Reservation reservation;
+        // Fed the bytes as they are written, for the file's ETag
+        final MessageDigest digest = FileMetadataCache.sha256();
+        // One chunk at a time; offset, digest and fileId are only touched while holding it
+        final ReentrantLock lock = new ReentrantLock();
+        volatile long offset;
+        volatile String fileId;
+        volatile long lastActivity = System.currentTimeMillis();
+
+        Upload(String id, long length, String extension, Path partial, StorageQuotas.Reservation reservation) {
+            this.id = id;
+            this.length = length;
+            this.extension = extension;
+            this.partial = partial;
+            this.reservation = reservation;
+        }
+
+        UploadStatus status() {
+            return new UploadStatus(id, offset, length, fileId);
+        }
+    }
+
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder resumed = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final Logger logger = Logger.getLogger(ResumableUploads.class.getName());
+
+    public ResumableUploads() {
+        this(Paths.get("uploads"));
+    }
+
+    ResumableUploads(Path uploadRoot) {
+        partialDir = uploadRoot.resolve("partial");
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        Files.createDirectories(partialDir);
+        // Their uploads, offsets and quota reservations only lived in the previous run's memory
+        int removed = 0;
+        try (Stream<Path> leftovers = Files.list(partialDir)) {
+            for (Path partial : (Iterable<Path>) leftovers::iterator) {
+                if (Files.deleteIfExists(partial)) {
+                    removed++;
+                }
+            }
+        }
+        if (removed > 0) {
+            logger.info("Deleted " + removed + " partial uploads left by a previous run");
+        }
+    }
+
+    /**
+     * @param filename  only its extension is kept
+     * @param owner     username of the uploader
+     * @param channelId the channel the file is posted to, or {@code null}
+     * @throws StorageQuotas.QuotaExceededException if {@code length} does not fit the quotas or the disk
+     */
+    public UploadStatus create(long length, String filename, String owner, String channelId) throws IOException {
+        if (length <= 0 || length > maxBytes) {
+            throw new IllegalArgumentException("Upload length must be between 1 and " + maxBytes + " bytes");
+        }
+        String extension = ChannelFileStore.extensionOf(filename);
+        String id = UUID.randomUUID().toString();
+        Path partial = partialDir.resolve(id + ".part");
+        StorageQuotas.Reservation reservation = storageQuotas.reserve(owner, channelId, length);
+        try {
+            Files.createFile(partial);
+        } catch (IOException e) {
+            storageQuotas.release(reservation);
+            throw e;
+        }
+        Upload upload = new Upload(id, length, extension, partial, reservation);
+        uploads.put(id, upload);
+        created.increment();
+        return upload.status();
+    }
+
+    /**
+     * @param owner username of the caller
+     * @return {@code null} if the upload does not exist, has expired or belongs to someone else
+     */
+    public UploadStatus status(String uploadId, String owner) {
+        Upload upload = find(uploadId, owner);
+        return upload == null ? null : upload.status();
+    }
+
+    private Upload find(String uploadId, String owner) {
+        Upload upload = uploads.get(uploadId);
+        return upload == null || !upload.reservation.user().equals(owner) ? null : upload;
+    }
+
+    /**
+     * Appends the bytes of {@code body} at {@code offset}, up to the upload's length.
+     *
+     * @param owner username of the caller
+     * @return the new status, or {@code null} if the upload does not exist or belongs to someone else
+     * @throws IllegalStateException    if {@code offset} is not the current offset, or another
+     *                                  chunk of the same upload is still being received
+     * @throws IllegalArgumentException if the body runs past the upload's length; the bytes up to
+     *                                  the length are kept
+     * @throws StorageQuotas.QuotaExceededException if the disk is under its low watermark
+     */
+    public UploadStatus append(String uploadId, String owner, long offset, InputStream body) throws IOException {
+        Upload upload = find(uploadId, owner);
+        if (upload == null) {
+            return null;
+        }
+        if (!upload.lock.tryLock()) {
+            throw new IllegalStateException("Another chunk of upload " + uploadId + " is in progress");
+        }
+        try {
+            if (offset != upload.offset) {
+                throw new IllegalStateException("Upload " + uploadId + " is at offset " + upload.offset + ", not " + offset);
+            }
+            if (upload.fileId != null) {
+                return upload.status();
+            }
+            storageQuotas.checkDisk(upload.length - upload.offset);
+            if (offset > 0) {
+                resumed.increment();
+            }
+            boolean overflow = write(upload, body);
+            upload.lastActivity = System.currentTimeMillis();
+            if (upload.offset == upload.length) {
+                complete(upload);
+            }
+            if (overflow) {
+                throw new IllegalArgumentException("Chunk runs past the upload length of " + upload.length + " bytes");
+            }
+            return upload.status();
+        } finally {
+            upload.lock.unlock();
+        }
+    }
+
+    // Advances the offset as bytes reach the file, so a read failure halfway keeps what was written
+    private boolean write(Upload upload, InputStream body) throws IOException {
+        byte[] buffer = new byte[BUFFER_BYTES];
+        try (FileChannel channel = FileChannel.open(upload.partial, StandardOpenOption.WRITE)) {
+            // Drop anything past the offset left by a write that failed after reaching the file
+            channel.truncate(upload.offset);
+            while (upload.offset < upload.length) {
+                int read = body.read(buffer, 0, (int) Math.min(buffer.length, upload.length - upload.offset));
+                if (read < 0) {
+                    return false;
+                }
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                while (chunk.hasRemaining()) {
+                    int written = channel.write(chunk, upload.offset);
+                    upload.digest.update(buffer, chunk.position() - written, written);
+                    upload.offset += written;
+                }
+                bytesReceived.add(read);
+            }
+        }
+        return body.read() >= 0;
+    }
+
+    private void complete(Upload upload) throws IOException {
+        String fileId = upload.id + upload.extension;
+        StorageQuotas.Reservation reservation = upload.reservation;
+        channelFileStore.commit(upload.partial, upload.digest.digest(), fileId, reservation.user(), reservation.channelId());
+        // The stored file is charged from here on
+        storageQuotas.release(reservation);
+        upload.fileId = fileId;
+        completed.increment();
+        logger.info("Completed upload " + upload.id + " (" + upload.length + " bytes) as " + fileId);
+    }
+
+    @Scheduled(fixedRate = 60000)
+    public void expire() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(expireMinutes);
+        for (Iterator<Upload> it = uploads.values().iterator(); it.hasNext(); ) {
+            Upload upload = it.next();
+            if (upload.lastActivity >= cutoff || !upload.lock.tryLock()) {
+                continue;
+            }
+            try {
+                it.remove();
+                if (upload.fileId == null) {
+                    storageQuotas.release(upload.reservation);
+                    Files.deleteIfExists(upload.partial);
+                    expired.increment();
+                }
+            } catch (IOException e) {
+                logger.warning("Failed to delete expired upload " + upload.id + ": " + e.getMessage());
+            } finally {
+                upload.lock.unlock();
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("active", uploads.values().stream().filter(upload -> upload.fileId == null).count());
+        stats.put("created", created.sum());
+        stats.put("completed", completed.sum());
+        stats.put("resumed", resumed.sum());
+        stats.put("expired", expired.sum());
+        stats.put("bytesReceived", bytesReceived.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,238 @@
+package dev.lunov.p2p_server.service;
+
+import dev.lunov.p2p_server.model.ClusterMessage;
+import jakarta.annotation.PostConstruct;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.OrderedMessageChannelDecorator;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Delivers peer-targeted signaling (call, SDP, ICE, messages, file signaling) straight to the
+ * STOMP session that subscribed to the target's topic, instead of publishing through the
+ * broker and matching the destination against every subscription in the system.
+ * <p>
+ * A peer topic is {@code <kind prefix><peerId>}, e.g. {@code /topic/webrtc/ice/abc}. Only the
+ * session that registered a peer id (see {@link PresenceService#peerOf}) may subscribe to its
+ * topics, so clients register first and subscribe after. Each subscription gets its own route;
+ * a route whose session no longer speaks for the peer, e.g. after the peer registered again
+ * from a new connection, is skipped.
+ * <p>
+ * A frame for a peer registered on another node is forwarded over the {@link ClusterBus} to
+ * that node, which delivers it the same way.
+ */
+@Service
+public class SignalRouter {
+
+    public static final Set<String> PEER_TOPIC_PREFIXES = Set.of(
+            "/topic/call/", "/topic/answer/", "/topic/hangup/",
+            "/topic/webrtc/sdp/", "/topic/webrtc/ice/",
+            "/topic/message/",
+            "/topic/file/request/", "/topic/file/accept/", "/topic/file/sdp/", "/topic/file/ice/");
+
+    @Autowired
+    @Qualifier("clientOutboundChannel")
+    private MessageChannel clientOutboundChannel;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private PresenceService presenceService;
+
+    @Autowired
+    private ClusterBus clusterBus;
+
+    // What StringMessageConverter produced for these relays before they were passed through
+    private static final MimeType DEFAULT_CONTENT_TYPE = new MimeType("text", "plain", StandardCharsets.UTF_8);
+
+    // Keeps direct deliveries to one session in send order (SDP before the ICE that follows it)
+    private MessageChannel orderedOutbound;
+
+    // Destination -> one route per subscription to it
+    private final Map<String, Set<Route>> routes = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, String>> sessionSubscriptions = new ConcurrentHashMap<>();
+    private final Logger logger = Logger.getLogger(SignalRouter.class.getName());
+
+    @PostConstruct
+    public void init() {
+        OrderedMessageChannelDecorator.configureInterceptor(clientOutboundChannel, true);
+        orderedOutbound = new OrderedMessageChannelDecorator(clientOutboundChannel, LogFactory.getLog(SignalRouter.class));
+    }
+
+    public record Route(String sessionId, String subscriptionId) {
+    }
+
+    /**
+     * @return the peer id if {@code destination} is a per-peer topic, otherwise {@code null}
+     */
+    public static String peerIdOf(String destination) {
+        if (destination == null || !destination.startsWith("/topic/")) {
+            return null;
+        }
+        int slash = destination.lastIndexOf('/');
+        if (slash == destination.length() - 1 || !PEER_TOPIC_PREFIXES.contains(destination.substring(0, slash + 1))) {
+            return null;
+        }
+        return destination.substring(slash + 1);
+    }
+
+    /**
+     * Records the route for a SUBSCRIBE to a per-peer topic.
+     *
+     * @return {@code false} if the session has not registered that peer id
+     */
+    public boolean subscribe(String sessionId, String subscriptionId, String destination) {
+        String peerId = peerIdOf(destination);
+        if (peerId == null) {
+            return true;
+        }
+        if (!peerId.equals(presenceService.peerOf(sessionId))) {
+            return false;
+        }
+        sessionSubscriptions.computeIfAbsent(sessionId, k -> new ConcurrentHashMap<>()).put(subscriptionId, destination);
+        routes.computeIfAbsent(destination, k -> ConcurrentHashMap.newKeySet()).add(new Route(sessionId, subscriptionId));
+        return true;
+    }
+
+    public void unsubscribe(String sessionId, String subscriptionId) {
+        Map<String, String> subscriptions = sessionSubscriptions.get(sessionId);
+        String destination = subscriptions == null ? null : subscriptions.remove(subscriptionId);
+        if (destination != null) {
+            removeRoute(destination, new Route(sessionId, subscriptionId));
+        }
+    }
+
+    public void removeSession(String sessionId) {
+        Map<String, String> subscriptions = sessionSubscriptions.remove(sessionId);
+        if (subscriptions != null) {
+            subscriptions.forEach((subscriptionId, destination) ->
+                    removeRoute(destination, new Route(sessionId, subscriptionId)));
+        }
+    }
+
+    private void removeRoute(String destination, Route route) {
+        routes.computeIfPresent(destination, (k, set) -> {
+            set.remove(route);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    public boolean hasRoute(String destination) {
+        return routes.containsKey(destination);
+    }
+
+    /**
+     * Sends {@code payload} to the session subscribed to {@code destination}, or forwards it if
+     * the target is registered on another node.
+     *
+     * @return {@code false} if nothing was sent: the target is offline, or online but not yet
+     * subscribed to {@code destination}
+     */
+    public boolean send(String destination, Object payload) {
+        return send(destination, payload, Map.of());
+    }
+
+    /**
+     * @param nativeHeaders extra STOMP headers for the MESSAGE frame
+     */
+    public boolean send(String destination, Object payload, Map<String, String> nativeHeaders) {
+        if (!routes.containsKey(destination) && presenceService.ownerOf(peerIdOf(destination)) == null) {
+            return false;
+        }
+        Message<?> converted = toMessage(payload);
+        return dispatch(destination, (byte[]) converted.getPayload(),
+                converted.getHeaders().get(MessageHeaders.CONTENT_TYPE, MimeType.class), nativeHeaders, true);
+    }
+
+    /**
+     * Relays a SEND frame's body unchanged, with its content type, instead of decoding it to a
+     * {@code String} and converting it back. An {@code application/octet-stream} body is written
+     * as a binary WebSocket frame to recipients on the native endpoint.
+     *
+     * @return {@code false} if nothing was sent, as for {@link #send}
+     */
+    public boolean relay(String destination, Message<byte[]> message) {
+        MimeType contentType = message.getHeaders().get(MessageHeaders.CONTENT_TYPE, MimeType.class);
+        return dispatch(destination, message.getPayload(), contentType != null ? contentType : DEFAULT_CONTENT_TYPE,
+                Map.of(), true);
+    }
+
+    /**
+     * Delivers a frame another node forwarded here. It is not forwarded again if the target
+     * has meanwhile moved on, so a frame never bounces between nodes.
+     *
+     * @return {@code false} if the target is no longer connected to this node
+     */
+    public boolean receive(ClusterMessage message) {
+        return dispatch(message.destination(), message.payload(), MimeType.valueOf(message.contentType()),
+                message.headers(), false);
+    }
+
+    private boolean dispatch(String destination, byte[] payload, MimeType contentType,
+                             Map<String, String> nativeHeaders, boolean forward) {
+        String peerId = peerIdOf(destination);
+        Set<Route> subscribed = routes.get(destination);
+        if (subscribed != null) {
+            boolean delivered = false;
+            for (Route route : subscribed) {
+                if (peerId.equals(presenceService.peerOf(route.sessionId()))) {
+                    deliver(route, destination, payload, contentType, nativeHeaders);
+                    delivered = true;
+                }
+            }
+            if (delivered) {
+                return true;
+            }
+        }
+        // No broker fallback: only the registering session may subscribe, so without a live route
+        // no broker subscription for the peer exists either
+        String owner = presenceService.ownerOf(peerId);
+        return owner != null && forward && clusterBus.send(owner, ClusterMessage.frame(ClusterMessage.Type.DELIVER,
+                clusterBus.getNodeId(), destination, contentType.toString(), nativeHeaders, payload));
+    }
+
+    public static boolean isBinary(Message<?> message) {
+        return MimeTypeUtils.APPLICATION_OCTET_STREAM.isCompatibleWith(
+                message.getHeaders().get(MessageHeaders.CONTENT_TYPE, MimeType.class));
+    }
+
+    public void deliver(Route route, String destination, byte[] payload, MimeType contentType, Map<String, String> nativeHeaders) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(route.sessionId());
+        accessor.setSubscriptionId(route.subscriptionId());
+        accessor.setDestination(destination);
+        accessor.setContentType(contentType);
+        nativeHeaders.forEach(accessor::setNativeHeader);
+        accessor.setLeaveMutable(true);
+        if (!orderedOutbound.send(MessageBuilder.createMessage(payload, accessor.getMessageHeaders()))) {
+            logger.warning("Failed to deliver to session " + route.sessionId() + " (" + destination + ")");
+        }
+    }
+
+    private Message<?> toMessage(Object payload) {
+        MessageConverter converter = messagingTemplate.getMessageConverter();
+        Message<?> message = converter.toMessage(payload, null);
+        if (message == null || !(message.getPayload() instanceof byte[])) {
+            throw new IllegalArgumentException("Cannot convert " + payload.getClass().getName() + " to a STOMP payload");
+        }
+        return message;
+    }
+}
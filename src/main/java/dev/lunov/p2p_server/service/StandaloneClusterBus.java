@@ -0,0 +1,51 @@
+package dev.lunov.p2p_server.service;
+
+import dev.lunov.p2p_server.model.ClusterMessage;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * A cluster of one: nothing is published and no peer is owned by another node.
+ */
+public class StandaloneClusterBus implements ClusterBus {
+
+    private final String nodeId;
+
+    public StandaloneClusterBus(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public Set<String> getNodes() {
+        return Set.of(nodeId);
+    }
+
+    @Override
+    public void publish(ClusterMessage message) {
+    }
+
+    @Override
+    public boolean send(String nodeId, ClusterMessage message) {
+        return false;
+    }
+
+    @Override
+    public void setReceiver(Consumer<ClusterMessage> receiver) {
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        return Map.of("mode", "standalone", "nodeId", nodeId);
+    }
+
+    @Override
+    public void close() {
+    }
+}
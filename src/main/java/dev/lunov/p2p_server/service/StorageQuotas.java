@@ -0,0 +1,189 @@
+package dev.lunov.p2p_server.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Disk usage per user and per channel, against {@code files.quota.user-mb} and
+ * {@code channel-mb}. Stored channel files are charged to their uploader and channel from the
+ * {@link ChannelFileStore}'s events; an upload in progress holds a {@link Reservation} for its
+ * declared length, taken before its first byte is read, so an upload that cannot fit is turned
+ * away up front instead of after it has been received. Deduplicated files are charged in full
+ * to everyone who posted them.
+ * <p>
+ * Independently of quotas, a new upload is refused, and a chunk of a running one is not
+ * started, once the volume holding {@code uploads} would be left with less than
+ * {@code min-free-mb} usable.
+ */
+@Service
+public class StorageQuotas implements ChannelFileStore.Listener {
+
+    private static final long MB = 1024 * 1024;
+    private static final int TOP = 10;
+
+    @Autowired
+    private ChannelFileStore channelFileStore;
+
+    @Value("${files.quota.user-mb:1024}")
+    private long userMb;
+
+    @Value("${files.quota.channel-mb:4096}")
+    private long channelMb;
+
+    @Value("${files.quota.min-free-mb:1024}")
+    private long minFreeMb;
+
+    /**
+     * Bytes charged ahead of an upload; give it back with {@link #release} once the upload is
+     * stored or abandoned.
+     */
+    public record Reservation(String user, String channelId, long bytes) {
+    }
+
+    public static class QuotaExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final boolean lowDisk;
+
+        QuotaExceededException(String message, boolean lowDisk) {
+            super(message);
+            this.lowDisk = lowDisk;
+        }
+
+        /**
+         * @return true if the server is short of disk rather than the user or channel over quota
+         */
+        public boolean isLowDisk() {
+            return lowDisk;
+        }
+    }
+
+    private final Path uploadRoot;
+    // Stored files plus reservations; accounts at zero are dropped
+    private final Map<String, Long> users = new HashMap<>();
+    private final Map<String, Long> channels = new HashMap<>();
+    private long reserved;
+    private final LongAdder overQuota = new LongAdder();
+    private final LongAdder lowDisk = new LongAdder();
+
+    public StorageQuotas() {
+        this(Paths.get("uploads"));
+    }
+
+    StorageQuotas(Path uploadRoot) {
+        this.uploadRoot = uploadRoot;
+    }
+
+    @PostConstruct
+    public void init() {
+        // Not under our lock: the store calls listeners under its own
+        List<ChannelFileStore.StoredFile> stored = channelFileStore.addListener(this);
+        synchronized (this) {
+            for (ChannelFileStore.StoredFile file : stored) {
+                charge(file.owner(), file.channelId(), file.size());
+            }
+        }
+    }
+
+    /**
+     * @param channelId {@code null} for a file not posted to a channel
+     * @throws QuotaExceededException if {@code bytes} more would put the user or channel over its
+     *                                quota, or the disk under its watermark
+     */
+    public synchronized Reservation reserve(String user, String channelId, long bytes) {
+        checkDisk(reserved + bytes);
+        long userLimit = userMb * MB;
+        if (users.getOrDefault(user, 0L) + bytes > userLimit) {
+            overQuota.increment();
+            throw new QuotaExceededException("Upload would exceed the quota of " + userMb + " MB per user", false);
+        }
+        long channelLimit = channelMb * MB;
+        if (channelId != null && channels.getOrDefault(channelId, 0L) + bytes > channelLimit) {
+            overQuota.increment();
+            throw new QuotaExceededException("Upload would exceed the quota of " + channelMb + " MB per channel", false);
+        }
+        charge(user, channelId, bytes);
+        reserved += bytes;
+        return new Reservation(user, channelId, bytes);
+    }
+
+    public synchronized void release(Reservation reservation) {
+        charge(reservation.user(), reservation.channelId(), -reservation.bytes());
+        reserved -= reservation.bytes();
+    }
+
+    /**
+     * @param bytes about to be written
+     * @throws QuotaExceededException if that would leave less than {@code min-free-mb} usable
+     */
+    public void checkDisk(long bytes) {
+        if (usableBytes() - bytes < minFreeMb * MB) {
+            lowDisk.increment();
+            throw new QuotaExceededException("Server storage is full", true);
+        }
+    }
+
+    @Override
+    public synchronized void stored(ChannelFileStore.StoredFile file) {
+        charge(file.owner(), file.channelId(), file.size());
+    }
+
+    @Override
+    public synchronized void deleted(ChannelFileStore.StoredFile file) {
+        charge(file.owner(), file.channelId(), -file.size());
+    }
+
+    private void charge(String user, String channelId, long bytes) {
+        if (user != null) {
+            users.merge(user, bytes, (a, b) -> a + b == 0 ? null : a + b);
+        }
+        if (channelId != null) {
+            channels.merge(channelId, bytes, (a, b) -> a + b == 0 ? null : a + b);
+        }
+    }
+
+    private long usableBytes() {
+        try {
+            return Files.getFileStore(uploadRoot).getUsableSpace();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Map<String, Long> top(Map<String, Long> usage) {
+        return usage.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(TOP)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> a, LinkedHashMap::new));
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("diskUsableBytes", usableBytes());
+        stats.put("minFreeBytes", minFreeMb * MB);
+        stats.put("userQuotaBytes", userMb * MB);
+        stats.put("channelQuotaBytes", channelMb * MB);
+        stats.put("reservedBytes", reserved);
+        stats.put("users", users.size());
+        stats.put("channels", channels.size());
+        stats.put("topUsers", top(users));
+        stats.put("topChannels", top(channels));
+        stats.put("rejectedOverQuota", overQuota.sum());
+        stats.put("rejectedLowDisk", lowDisk.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,97 @@
+package dev.lunov.p2p_server.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hashed timing wheel: timeouts are hashed by deadline into a fixed ring of slots, one slot is
+ * visited per tick, and a timeout further away than one revolution waits out its remaining
+ * rounds in its slot. Scheduling and cancelling are O(1) and a tick only touches the timeouts
+ * in the current slot, so thousands of pending timeouts cost neither a task nor a heap entry each.
+ * <p>
+ * Deadlines are rounded up to whole ticks. At most one timeout is pending per key; scheduling a
+ * key again replaces it. Expired keys are handed to the callback on the wheel's own thread,
+ * outside its lock, so the callback may schedule again.
+ */
+public class TimingWheel<K> {
+
+    private final long tickMs;
+    private final Consumer<K> onExpire;
+    // Per slot: key -> remaining rounds. Guarded by this.
+    private final List<Map<K, Long>> slots;
+    private final Map<K, Integer> slotOf = new HashMap<>();
+    private final ScheduledExecutorService ticker;
+    private int cursor;
+    private final Logger logger = Logger.getLogger(TimingWheel.class.getName());
+
+    public TimingWheel(String name, long tickMs, int slotCount, Consumer<K> onExpire) {
+        this.tickMs = tickMs;
+        this.onExpire = onExpire;
+        this.slots = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            slots.add(new HashMap<>());
+        }
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void schedule(K key, long delayMs) {
+        cancel(key);
+        long ticks = Math.max(1, (delayMs + tickMs - 1) / tickMs);
+        int slot = (int) ((cursor + ticks) % slots.size());
+        slots.get(slot).put(key, (ticks - 1) / slots.size());
+        slotOf.put(key, slot);
+    }
+
+    public synchronized boolean cancel(K key) {
+        Integer slot = slotOf.remove(key);
+        return slot != null && slots.get(slot).remove(key) != null;
+    }
+
+    public synchronized int size() {
+        return slotOf.size();
+    }
+
+    private void tick() {
+        List<K> expired = new ArrayList<>();
+        synchronized (this) {
+            cursor = (cursor + 1) % slots.size();
+            Iterator<Map.Entry<K, Long>> it = slots.get(cursor).entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<K, Long> entry = it.next();
+                if (entry.getValue() == 0) {
+                    it.remove();
+                    slotOf.remove(entry.getKey());
+                    expired.add(entry.getKey());
+                } else {
+                    entry.setValue(entry.getValue() - 1);
+                }
+            }
+        }
+        for (K key : expired) {
+            try {
+                onExpire.accept(key);
+            } catch (RuntimeException e) {
+                // Keep ticking; one failing callback must not stop every other expiry
+                logger.log(Level.WARNING, "Timeout callback failed for " + key, e);
+            }
+        }
+    }
+
+    public void stop() {
+        ticker.shutdownNow();
+    }
+}
@@ -0,0 +1,113 @@
+package dev.lunov.p2p_server.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.lunov.p2p_server.config.EncodedPayloadMessageConverter;
+import dev.lunov.p2p_server.service.EncodedPayload;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One system announcement through Spring's simple broker with 50k sessions subscribed: the old
+ * per-peer {@code /topic/message/<peerId>} loop (over the first 2k peers only) against a single
+ * pre-encoded publish to {@code /topic/system}. Measures the time until every MESSAGE is on the
+ * client outbound channel (delivery to sockets is asynchronous in both cases). Run with
+ * {@code main}; not part of the test suite.
+ */
+public class BroadcastFanoutBenchmark {
+
+    private static final int PEERS = Integer.getInteger("peers", 50_000);
+    // Over the broker's 1024-entry destination cache, so like with 50k peers every send of the
+    // per-peer loop misses it and scans all sessions; the loop grows quadratically
+    private static final int PER_PEER_LIMIT = Math.min(PEERS, 2_000);
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        ExecutorSubscribableChannel clientInbound = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel clientOutbound = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+        SimpleBrokerMessageHandler broker = new SimpleBrokerMessageHandler(
+                clientInbound, clientOutbound, brokerChannel, List.of("/topic"));
+        broker.start();
+
+        LongAdder delivered = new LongAdder();
+        clientOutbound.subscribe(message -> delivered.increment());
+
+        for (int i = 0; i < PEERS; i++) {
+            connect(broker, "session" + i);
+            subscribe(broker, "session" + i, "system", "/topic/system");
+            subscribe(broker, "session" + i, "message", "/topic/message/peer" + i);
+        }
+
+        SimpMessagingTemplate template = new SimpMessagingTemplate(brokerChannel);
+        template.setMessageConverter(new CompositeMessageConverter(List.of(
+                new EncodedPayloadMessageConverter(), new StringMessageConverter())));
+
+        for (int round = 1; round <= ROUNDS; round++) {
+            delivered.reset();
+            long start = System.nanoTime();
+            perPeer(template, "Maintenance tonight at 23:00");
+            long perPeerNanos = System.nanoTime() - start;
+            long perPeerDelivered = delivered.sumThenReset();
+
+            start = System.nanoTime();
+            single(template, round, "Maintenance tonight at 23:00");
+            long singleNanos = System.nanoTime() - start;
+
+            System.out.printf("round %2d: per-peer loop %d frames in %d ms | single publish %d frames in %d ms%n",
+                    round, perPeerDelivered, perPeerNanos / 1_000_000, delivered.sum(), singleNanos / 1_000_000);
+        }
+        broker.stop();
+    }
+
+    private static void connect(SimpleBrokerMessageHandler broker, String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+        accessor.setSessionId(sessionId);
+        broker.handleMessage(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+    }
+
+    private static void subscribe(SimpleBrokerMessageHandler broker, String sessionId, String subscriptionId, String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        broker.handleMessage(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+    }
+
+    // What SignalController.broadcastSystemNotification used to do
+    private static void perPeer(SimpMessagingTemplate template, String text) throws Exception {
+        Map<String, Object> sysMsg = new HashMap<>();
+        sysMsg.put("senderId", "system_admin");
+        sysMsg.put("senderName", "Системне сповіщення");
+        sysMsg.put("text", text);
+        sysMsg.put("type", "text");
+        sysMsg.put("timestamp", System.currentTimeMillis());
+        String jsonPayload = new ObjectMapper().writeValueAsString(sysMsg);
+        for (int i = 0; i < PER_PEER_LIMIT; i++) {
+            template.convertAndSend("/topic/message/peer" + i, jsonPayload);
+        }
+    }
+
+    // What Announcements.broadcast does
+    private static void single(SimpMessagingTemplate template, long id, String text) {
+        Map<String, Object> announcement = new LinkedHashMap<>();
+        announcement.put("id", id);
+        announcement.put("senderId", "system_admin");
+        announcement.put("senderName", "Системне сповіщення");
+        announcement.put("text", text);
+        announcement.put("type", "text");
+        announcement.put("timestamp", System.currentTimeMillis());
+        template.convertAndSend("/topic/system", EncodedPayload.encode("announcement", id, announcement));
+    }
+}
@@ -0,0 +1,142 @@
+package dev.lunov.p2p_server.benchmark;
+
+import dev.lunov.p2p_server.P2pServerApplication;
+import dev.lunov.p2p_server.security.JwtUtil;
+import dev.lunov.p2p_server.service.PresenceService;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts 1, 2 and 4 nodes in one JVM on a loopback cluster bus, connects the same number of
+ * clients to each node, and has every client send ICE-sized relays to its counterpart on the
+ * next node, so with more than one node every frame crosses the bus. Also checks that presence
+ * was replicated to every node. Run with {@code main}; not part of the test suite.
+ * <p>
+ * Nodes share the machine's cores, so aggregate throughput only grows with node count while
+ * there are idle cores; {@code -Dnodes=1,2,4,8} picks the node counts.
+ */
+public class ClusterScalingBenchmark {
+
+    private static final int CLIENTS_PER_NODE = 50;
+    private static final int MESSAGES_PER_CLIENT = 400;
+    private static final String ICE = "{\"candidate\":\"candidate:842163049 1 udp 1677729535 203.0.113.7 46154 typ srflx "
+            + "raddr 192.168.1.20 rport 46154 generation 0 ufrag sXq4 network-cost 999\",\"sdpMid\":\"0\",\"sdpMLineIndex\":0}";
+
+    public static void main(String[] args) throws Exception {
+        for (String count : System.getProperty("nodes", "1,2,4").split(",")) {
+            run(Integer.parseInt(count.trim()));
+        }
+    }
+
+    private static void run(int nodeCount) throws Exception {
+        String network = "bench-" + nodeCount;
+        List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+        try {
+            for (int n = 0; n < nodeCount; n++) {
+                nodes.add(SpringApplication.run(P2pServerApplication.class,
+                        "--server.port=0",
+                        "--spring.main.banner-mode=off",
+                        "--logging.file.name=",
+                        "--logging.level.root=WARN",
+                        "--logging.level.dev.lunov=WARN",
+                        "--rate-limit.enabled=false",
+                        "--websocket.compression.enabled=false",
+                        "--mailbox.dir=target/cluster-bench/" + network + "-" + n,
+                        "--cluster.mode=loopback",
+                        "--cluster.loopback.network=" + network,
+                        "--cluster.node-id=node-" + n));
+            }
+            JwtUtil jwtUtil = nodes.get(0).getBean(JwtUtil.class);
+
+            ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+            scheduler.initialize();
+            WebSocketStompClient client = new WebSocketStompClient(new StandardWebSocketClient());
+            client.setMessageConverter(new StringMessageConverter() {
+                {
+                    addSupportedMimeTypes(MimeTypeUtils.APPLICATION_JSON);
+                }
+            });
+            client.setTaskScheduler(scheduler);
+
+            int total = nodeCount * CLIENTS_PER_NODE;
+            CountDownLatch received = new CountDownLatch(total * MESSAGES_PER_CLIENT);
+            List<StompSession> sessions = new ArrayList<>();
+            for (int n = 0; n < nodeCount; n++) {
+                int port = Integer.parseInt(nodes.get(n).getEnvironment().getProperty("local.server.port"));
+                for (int i = 0; i < CLIENTS_PER_NODE; i++) {
+                    String peerId = peerId(n, i);
+                    StompHeaders headers = new StompHeaders();
+                    headers.add("Authorization", "Bearer " + jwtUtil.generateToken(peerId, "USER"));
+                    StompSession session = client.connectAsync("ws://localhost:" + port + "/signal-ws",
+                            new WebSocketHttpHeaders(), headers, new StompSessionHandlerAdapter() {
+                            }).get(60, TimeUnit.SECONDS);
+                    // Register first: only the session that registered a peer may subscribe to its topics
+                    StompHeaders register = new StompHeaders();
+                    register.setDestination("/app/register");
+                    register.setContentType(MimeTypeUtils.APPLICATION_JSON);
+                    session.send(register, "{\"id\":\"" + peerId + "\",\"displayName\":\"Peer " + i + "\",\"online\":true}");
+                    session.subscribe("/topic/webrtc/ice/" + peerId, new StompFrameHandler() {
+                        @Override
+                        public Type getPayloadType(StompHeaders headers) {
+                            return String.class;
+                        }
+
+                        @Override
+                        public void handleFrame(StompHeaders headers, Object payload) {
+                            received.countDown();
+                        }
+                    });
+                    sessions.add(session);
+                }
+            }
+            Thread.sleep(1000 + 500L * nodeCount);
+            for (int n = 0; n < nodeCount; n++) {
+                int seen = nodes.get(n).getBean(PresenceService.class).getPeers().size();
+                if (seen != total) {
+                    System.out.printf("node-%d sees %d of %d peers%n", n, seen, total);
+                }
+            }
+
+            long start = System.nanoTime();
+            for (int m = 0; m < MESSAGES_PER_CLIENT; m++) {
+                for (int s = 0; s < total; s++) {
+                    int n = s / CLIENTS_PER_NODE;
+                    StompHeaders headers = new StompHeaders();
+                    headers.setDestination("/app/webrtc/ice/" + peerId((n + 1) % nodeCount, s % CLIENTS_PER_NODE));
+                    sessions.get(s).send(headers, ICE);
+                }
+            }
+            boolean done = received.await(180, TimeUnit.SECONDS);
+            long nanos = System.nanoTime() - start;
+            long delivered = (long) total * MESSAGES_PER_CLIENT - received.getCount();
+            System.out.printf("%d node(s), %d clients: %d relays in %d ms = %.0f msg/s (%.0f per node)%s%n",
+                    nodeCount, total, delivered, nanos / 1_000_000, delivered * 1e9 / nanos,
+                    delivered * 1e9 / nanos / nodeCount, done ? "" : " (timed out)");
+
+            sessions.forEach(StompSession::disconnect);
+            scheduler.shutdown();
+        } finally {
+            nodes.forEach(ConfigurableApplicationContext::close);
+        }
+    }
+
+    private static String peerId(int node, int client) {
+        return "n" + node + "-" + client;
+    }
+}
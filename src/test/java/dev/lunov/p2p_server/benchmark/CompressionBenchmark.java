@@ -0,0 +1,146 @@
+package dev.lunov.p2p_server.benchmark;
+
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntFunction;
+import java.util.zip.Deflater;
+
+/**
+ * Bytes on the wire and server CPU per STOMP MESSAGE frame type with permessage-deflate as
+ * Tomcat applies it (raw deflate, default level, sync flush per message, trailing 4 bytes
+ * stripped), with and without context takeover. Run with {@code main}; not part of the test suite.
+ */
+public class CompressionBenchmark {
+
+    private static final int FRAMES = 20_000;
+    private static final byte[] BUFFER = new byte[1 << 20];
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        System.out.printf("%-10s %10s %14s %14s %14s %14s%n",
+                "frame", "raw B", "deflate B", "ns/frame", "no-ctx B", "no-ctx ns");
+        report("ice", i -> frame("/topic/webrtc/ice/peer1", ice(random)));
+        report("sdp", i -> frame("/topic/webrtc/sdp/peer1", sdp(random)));
+        report("chat", i -> frame("/topic/channel/general", chat(random)));
+        report("peers", i -> frame("/topic/peers", peers(random, 500)));
+    }
+
+    private static void report(String name, IntFunction<byte[]> frames) {
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 256; i++) {
+            samples.add(frames.apply(i));
+        }
+        int count = name.equals("peers") ? FRAMES / 50 : FRAMES;
+        long raw = 0;
+        for (int i = 0; i < count; i++) {
+            raw += samples.get(i % samples.size()).length;
+        }
+        long[] takeover = deflate(samples, count, true);
+        long[] fresh = deflate(samples, count, false);
+        System.out.printf("%-10s %10d %14d %14d %14d %14d%n", name,
+                raw / count, takeover[0] / count, takeover[1] / count, fresh[0] / count, fresh[1] / count);
+    }
+
+    /**
+     * @return total compressed bytes and total nanoseconds
+     */
+    private static long[] deflate(List<byte[]> samples, int count, boolean contextTakeover) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        // Warm up
+        for (int i = 0; i < count; i++) {
+            compress(deflater, samples.get(i % samples.size()), contextTakeover);
+        }
+        deflater.reset();
+        long bytes = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            bytes += compress(deflater, samples.get(i % samples.size()), contextTakeover);
+        }
+        long nanos = System.nanoTime() - start;
+        deflater.end();
+        return new long[]{bytes, nanos};
+    }
+
+    private static int compress(Deflater deflater, byte[] frame, boolean contextTakeover) {
+        if (!contextTakeover) {
+            deflater.reset();
+        }
+        deflater.setInput(frame);
+        int written = 0;
+        int n;
+        do {
+            n = deflater.deflate(BUFFER, written, BUFFER.length - written, Deflater.SYNC_FLUSH);
+            written += n;
+        } while (n > 0 && !deflater.needsInput());
+        // The 00 00 FF FF tail of the sync flush is not sent
+        return written - 4;
+    }
+
+    private static byte[] frame(String destination, String body) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        accessor.setDestination(destination);
+        accessor.setSubscriptionId("sub-3");
+        accessor.setMessageId("b1c2d3e4-" + Integer.toHexString(body.hashCode()));
+        accessor.setContentType(org.springframework.util.MimeTypeUtils.TEXT_PLAIN);
+        byte[] payload = body.getBytes(StandardCharsets.UTF_8);
+        return new StompEncoder().encode(MessageBuilder.createMessage(payload, accessor.getMessageHeaders()));
+    }
+
+    private static String ice(Random random) {
+        return "{\"candidate\":\"candidate:" + random.nextInt(1 << 30) + " 1 udp 2122260223 192.168."
+                + random.nextInt(256) + "." + random.nextInt(256) + " " + (49152 + random.nextInt(16384))
+                + " typ host generation 0 ufrag " + Long.toString(random.nextLong() & 0xffffffL, 36)
+                + " network-id 1\",\"sdpMid\":\"0\",\"sdpMLineIndex\":0}";
+    }
+
+    private static String sdp(Random random) {
+        String ufrag = Long.toString(random.nextLong() & 0xffffffL, 36);
+        StringBuilder fingerprint = new StringBuilder();
+        for (int i = 0; i < 32; i++) {
+            fingerprint.append(i == 0 ? "" : ":").append(String.format("%02X", random.nextInt(256)));
+        }
+        StringBuilder sdp = new StringBuilder("v=0\\r\\no=- " + Math.abs(random.nextLong()) + " 2 IN IP4 127.0.0.1\\r\\ns=-\\r\\nt=0 0\\r\\n"
+                + "a=group:BUNDLE 0 1\\r\\na=extmap-allow-mixed\\r\\na=msid-semantic: WMS stream\\r\\n");
+        String[] media = {"audio 9 UDP/TLS/RTP/SAVPF 111 63 9 0 8 13 110 126", "video 9 UDP/TLS/RTP/SAVPF 96 97 102 103 104 105 106 107 108 109 127 125 39 40 45 46 98 99 100 101"};
+        for (int m = 0; m < media.length; m++) {
+            sdp.append("m=").append(media[m]).append("\\r\\nc=IN IP4 0.0.0.0\\r\\na=rtcp:9 IN IP4 0.0.0.0\\r\\n")
+                    .append("a=ice-ufrag:").append(ufrag).append("\\r\\na=ice-pwd:").append(Long.toString(random.nextLong(), 36))
+                    .append("\\r\\na=ice-options:trickle\\r\\na=fingerprint:sha-256 ").append(fingerprint)
+                    .append("\\r\\na=setup:actpass\\r\\na=mid:").append(m).append("\\r\\na=sendrecv\\r\\na=rtcp-mux\\r\\n");
+            for (String codec : media[m].substring(media[m].indexOf("SAVPF") + 6).split(" ")) {
+                sdp.append("a=rtpmap:").append(codec).append(m == 0 ? " opus/48000/2" : " VP8/90000").append("\\r\\n")
+                        .append("a=rtcp-fb:").append(codec).append(" transport-cc\\r\\n")
+                        .append("a=rtcp-fb:").append(codec).append(" nack\\r\\n")
+                        .append("a=fmtp:").append(codec).append(" minptime=10;useinbandfec=1\\r\\n");
+            }
+        }
+        return "{\"type\":\"offer\",\"sdp\":\"" + sdp + "\"}";
+    }
+
+    private static String chat(Random random) {
+        return "{\"senderId\":\"peer" + random.nextInt(1000) + "\",\"senderName\":\"User " + random.nextInt(1000)
+                + "\",\"text\":\"" + Long.toString(random.nextLong(), 36) + " see you at " + random.nextInt(24)
+                + ":00\",\"type\":\"text\",\"timestamp\":" + (1_790_000_000_000L + random.nextInt(1_000_000)) + "}";
+    }
+
+    private static String peers(Random random, int count) {
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < count; i++) {
+            String id = Long.toString(random.nextLong() & Long.MAX_VALUE, 36);
+            json.append(i == 0 ? "" : ",").append('"').append(id).append("\":{\"id\":\"").append(id)
+                    .append("\",\"ip\":\"10.0.").append(random.nextInt(256)).append('.').append(random.nextInt(256))
+                    .append("\",\"platform\":\"").append(random.nextBoolean() ? "android" : "windows")
+                    .append("\",\"displayName\":\"User ").append(random.nextInt(100_000))
+                    .append("\",\"online\":true,\"status\":\"online\",\"avatarHash\":\"")
+                    .append(Long.toHexString(random.nextLong())).append(Long.toHexString(random.nextLong())).append("\"}");
+        }
+        return json.append('}').toString();
+    }
+}
@@ -0,0 +1,62 @@
+package dev.lunov.p2p_server.benchmark;
+
+import dev.lunov.p2p_server.service.Mailbox;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Append throughput of the offline {@link Mailbox} log with ~1 KB encrypted messages spread
+ * over many recipients, including segment rolls, plus the time to recover the index on restart.
+ * Run with {@code main}; not part of the test suite.
+ */
+public class MailboxAppendBenchmark {
+
+    private static final int MESSAGES = 500_000;
+    private static final int RECIPIENTS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("mailbox-bench");
+        String message = "x".repeat(1024);
+        try {
+            Mailbox mailbox = open(dir);
+            for (int i = 0; i < 50_000; i++) {
+                mailbox.append("warmup" + (i % RECIPIENTS), message);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < MESSAGES; i++) {
+                mailbox.append("peer" + (i % RECIPIENTS), message);
+            }
+            long nanos = System.nanoTime() - start;
+            System.out.printf("append: %d messages in %d ms = %.0f msg/s%n", MESSAGES, nanos / 1_000_000, MESSAGES * 1e9 / nanos);
+            Map<String, Object> stats = mailbox.getStats();
+            System.out.println("stats: " + stats);
+            mailbox.shutdown();
+
+            start = System.nanoTime();
+            Mailbox recovered = open(dir);
+            System.out.printf("recovery: %d ms, %s pending%n", (System.nanoTime() - start) / 1_000_000, recovered.getStats().get("pending"));
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static Mailbox open(Path dir) throws Exception {
+        Mailbox mailbox = new Mailbox();
+        ReflectionTestUtils.setField(mailbox, "dir", dir.toString());
+        ReflectionTestUtils.setField(mailbox, "segmentSizeMb", 64);
+        ReflectionTestUtils.setField(mailbox, "maxSizeMb", 4096);
+        ReflectionTestUtils.setField(mailbox, "retentionHours", 72L);
+        ReflectionTestUtils.setField(mailbox, "maxMessagesPerPeer", 1000);
+        ReflectionTestUtils.setField(mailbox, "batchSize", 100);
+        ReflectionTestUtils.setField(mailbox, "batchBytes", 65536);
+        mailbox.init();
+        return mailbox;
+    }
+}
@@ -0,0 +1,121 @@
+package dev.lunov.p2p_server.benchmark;
+
+import dev.lunov.p2p_server.P2pServerApplication;
+import dev.lunov.p2p_server.security.JwtUtil;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connect storm followed by an ICE relay burst against a locally started server, once per
+ * inbound/outbound executor mode. Run with {@code main}; not part of the test suite.
+ */
+public class RelayThroughputBenchmark {
+
+    private static final int CLIENTS = 200;
+    private static final int MESSAGES_PER_CLIENT = 200;
+
+    public static void main(String[] args) throws Exception {
+        for (String mode : new String[]{"pool", "virtual"}) {
+            run(mode);
+        }
+    }
+
+    private static void run(String mode) throws Exception {
+        ConfigurableApplicationContext context = SpringApplication.run(P2pServerApplication.class,
+                "--server.port=0",
+                "--spring.main.banner-mode=off",
+                "--logging.file.name=",
+                "--logging.level.root=WARN",
+                "--logging.level.dev.lunov=WARN",
+                "--websocket.executor.inbound.mode=" + mode,
+                "--websocket.executor.outbound.mode=" + mode);
+        try {
+            String url = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/signal";
+            JwtUtil jwtUtil = context.getBean(JwtUtil.class);
+
+            ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+            scheduler.initialize();
+            WebSocketStompClient client = new WebSocketStompClient(
+                    new SockJsClient(List.of(new WebSocketTransport(new StandardWebSocketClient()))));
+            client.setMessageConverter(new StringMessageConverter() {
+                {
+                    addSupportedMimeTypes(MimeTypeUtils.APPLICATION_JSON);
+                }
+            });
+            client.setTaskScheduler(scheduler);
+
+            long connectStart = System.nanoTime();
+            List<CompletableFuture<StompSession>> connecting = new ArrayList<>();
+            for (int i = 0; i < CLIENTS; i++) {
+                StompHeaders headers = new StompHeaders();
+                headers.add("Authorization", "Bearer " + jwtUtil.generateToken("bench" + i, "USER"));
+                connecting.add(client.connectAsync(url, new WebSocketHttpHeaders(), headers, new StompSessionHandlerAdapter() {
+                }));
+            }
+            List<StompSession> sessions = new ArrayList<>();
+            for (CompletableFuture<StompSession> future : connecting) {
+                sessions.add(future.get(60, TimeUnit.SECONDS));
+            }
+            long connectNanos = System.nanoTime() - connectStart;
+
+            CountDownLatch received = new CountDownLatch(CLIENTS * MESSAGES_PER_CLIENT);
+            for (int i = 0; i < CLIENTS; i++) {
+                // Register first: only the session that registered a peer may subscribe to its topics
+                StompHeaders register = new StompHeaders();
+                register.setDestination("/app/register");
+                register.setContentType(MimeTypeUtils.APPLICATION_JSON);
+                sessions.get(i).send(register, "{\"id\":\"peer" + i + "\",\"displayName\":\"Peer " + i + "\",\"online\":true}");
+                sessions.get(i).subscribe("/topic/webrtc/ice/peer" + i, new StompFrameHandler() {
+                    @Override
+                    public Type getPayloadType(StompHeaders headers) {
+                        return String.class;
+                    }
+
+                    @Override
+                    public void handleFrame(StompHeaders headers, Object payload) {
+                        received.countDown();
+                    }
+                });
+            }
+            Thread.sleep(1000);
+
+            long relayStart = System.nanoTime();
+            for (int m = 0; m < MESSAGES_PER_CLIENT; m++) {
+                for (int i = 0; i < CLIENTS; i++) {
+                    sessions.get(i).send("/app/webrtc/ice/peer" + ((i + 1) % CLIENTS), "{\"candidate\":\"" + m + "\"}");
+                }
+            }
+            boolean done = received.await(120, TimeUnit.SECONDS);
+            long relayNanos = System.nanoTime() - relayStart;
+            long delivered = (long) CLIENTS * MESSAGES_PER_CLIENT - received.getCount();
+
+            System.out.printf("%-8s connect storm: %d sessions in %d ms | relay: %d msgs in %d ms = %.0f msg/s%s%n",
+                    mode, CLIENTS, connectNanos / 1_000_000, delivered, relayNanos / 1_000_000,
+                    delivered * 1e9 / relayNanos, done ? "" : " (timed out)");
+
+            sessions.forEach(StompSession::disconnect);
+            scheduler.shutdown();
+        } finally {
+            context.close();
+        }
+    }
+}
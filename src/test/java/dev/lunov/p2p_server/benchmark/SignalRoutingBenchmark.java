@@ -0,0 +1,119 @@
+package dev.lunov.p2p_server.benchmark;
+
+import dev.lunov.p2p_server.model.Peer;
+import dev.lunov.p2p_server.service.PresenceService;
+import dev.lunov.p2p_server.service.SignalRouter;
+import dev.lunov.p2p_server.service.StandaloneClusterBus;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Delivery latency of one peer-targeted ICE frame as the number of subscriptions grows:
+ * SimpleBroker destination matching vs. the {@link SignalRouter} route table.
+ * Run with {@code main}; not part of the test suite.
+ */
+public class SignalRoutingBenchmark {
+
+    private static final int MAX_SENDS = 200_000;
+    private static final long WARMUP_NANOS = 1_000_000_000L;
+    private static final long MEASURE_NANOS = 2_000_000_000L;
+    private static final byte[] ICE = "{\"candidate\":\"candidate:1 1 udp 2122260223 192.168.1.2 54321 typ host\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    public static void main(String[] args) {
+        System.out.printf("%-14s %-16s %-16s%n", "subscriptions", "broker ns/op", "router ns/op");
+        for (int peers : new int[]{100, 1_000, 10_000, 50_000}) {
+            int subscriptions = peers * SignalRouter.PEER_TOPIC_PREFIXES.size();
+            System.out.printf("%-14d %-16.0f %-16.0f%n", subscriptions, broker(peers), router(peers));
+        }
+    }
+
+    private static double broker(int peers) {
+        LongAdder delivered = new LongAdder();
+        ExecutorSubscribableChannel outbound = new ExecutorSubscribableChannel();
+        outbound.subscribe(message -> delivered.increment());
+        SimpleBrokerMessageHandler broker = new SimpleBrokerMessageHandler(
+                new ExecutorSubscribableChannel(), outbound, new ExecutorSubscribableChannel(), List.of("/topic"));
+        broker.start();
+        for (int i = 0; i < peers; i++) {
+            SimpMessageHeaderAccessor connect = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+            connect.setSessionId("session" + i);
+            broker.handleMessage(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()));
+            int n = 0;
+            for (String prefix : SignalRouter.PEER_TOPIC_PREFIXES) {
+                SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+                accessor.setSessionId("session" + i);
+                accessor.setSubscriptionId("sub" + n++);
+                accessor.setDestination(prefix + "peer" + i);
+                broker.handleMessage(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+            }
+        }
+        return measure(peers, delivered, destination -> {
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            accessor.setDestination(destination);
+            accessor.setContentType(MimeTypeUtils.TEXT_PLAIN);
+            Message<byte[]> message = MessageBuilder.createMessage(ICE, accessor.getMessageHeaders());
+            broker.handleMessage(message);
+        });
+    }
+
+    private static double router(int peers) {
+        LongAdder delivered = new LongAdder();
+        ExecutorSubscribableChannel outbound = new ExecutorSubscribableChannel();
+        outbound.subscribe(message -> delivered.increment());
+        SignalRouter router = new SignalRouter();
+        ReflectionTestUtils.setField(router, "clientOutboundChannel", outbound);
+        ReflectionTestUtils.setField(router, "messagingTemplate", new SimpMessagingTemplate(outbound));
+        PresenceService presenceService = new PresenceService();
+        ReflectionTestUtils.setField(presenceService, "messagingTemplate", new SimpMessagingTemplate(new ExecutorSubscribableChannel()));
+        ReflectionTestUtils.setField(presenceService, "clusterBus", new StandaloneClusterBus("bench"));
+        ReflectionTestUtils.setField(router, "presenceService", presenceService);
+        router.init();
+        for (int i = 0; i < peers; i++) {
+            presenceService.register(new Peer("peer" + i, "10.0.0.1", "android", "Peer " + i, true, "idle", null, null, null), "session" + i);
+            int n = 0;
+            for (String prefix : SignalRouter.PEER_TOPIC_PREFIXES) {
+                router.subscribe("session" + i, "sub" + n++, prefix + "peer" + i);
+            }
+        }
+        return measure(peers, delivered, destination -> router.send(destination, ICE));
+    }
+
+    private static double measure(int peers, LongAdder delivered, java.util.function.Consumer<String> send) {
+        String[] destinations = new String[4096];
+        for (int i = 0; i < destinations.length; i++) {
+            destinations[i] = "/topic/webrtc/ice/peer" + ThreadLocalRandom.current().nextInt(peers);
+        }
+        run(destinations, send, MAX_SENDS / 4, WARMUP_NANOS);
+        delivered.reset();
+        long start = System.nanoTime();
+        int sent = run(destinations, send, MAX_SENDS, MEASURE_NANOS);
+        long elapsed = System.nanoTime() - start;
+        if (delivered.sum() != sent) {
+            throw new IllegalStateException("Delivered " + delivered.sum() + " of " + sent);
+        }
+        return (double) elapsed / sent;
+    }
+
+    // Broker matching gets slow enough at high subscription counts that runs are bounded by time too
+    private static int run(String[] destinations, java.util.function.Consumer<String> send, int maxSends, long maxNanos) {
+        long deadline = System.nanoTime() + maxNanos;
+        int sent = 0;
+        while (sent < maxSends && (sent & 63) != 0 || sent < maxSends && System.nanoTime() < deadline) {
+            send.accept(destinations[sent++ & 4095]);
+        }
+        return sent;
+    }
+}
@@ -0,0 +1,152 @@
+package dev.lunov.p2p_server.benchmark;
+
+import dev.lunov.p2p_server.P2pServerApplication;
+import dev.lunov.p2p_server.security.JwtUtil;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.WebSocketClient;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SDP-sized relay burst over SockJS ({@code /signal}), the native endpoint with text frames,
+ * and the native endpoint with {@code application/octet-stream} (binary) frames, against one
+ * locally started server. Run with {@code main}; not part of the test suite.
+ */
+public class TransportRelayBenchmark {
+
+    private static final int CLIENTS = 100;
+    private static final int MESSAGES_PER_CLIENT = 200;
+    private static final int ROUNDS = 3;
+
+    private enum Transport { SOCKJS, NATIVE_TEXT, NATIVE_BINARY }
+
+    public static void main(String[] args) throws Exception {
+        ConfigurableApplicationContext context = SpringApplication.run(P2pServerApplication.class,
+                "--server.port=0",
+                "--spring.main.banner-mode=off",
+                "--logging.file.name=",
+                "--logging.level.root=WARN",
+                "--logging.level.dev.lunov=WARN",
+                "--websocket.compression.enabled=false",
+                "--rate-limit.enabled=false");
+        try {
+            int port = Integer.parseInt(context.getEnvironment().getProperty("local.server.port"));
+            JwtUtil jwtUtil = context.getBean(JwtUtil.class);
+            String sdp = sdp();
+            // Later rounds run on a warmed-up JVM
+            for (int round = 1; round <= ROUNDS; round++) {
+                for (Transport transport : Transport.values()) {
+                    run(transport, round, port, jwtUtil, sdp);
+                }
+            }
+        } finally {
+            context.close();
+        }
+    }
+
+    private static void run(Transport transport, int round, int port, JwtUtil jwtUtil, String sdp) throws Exception {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.initialize();
+        WebSocketClient webSocketClient = new StandardWebSocketClient();
+        String url = "ws://localhost:" + port + "/signal-ws";
+        if (transport == Transport.SOCKJS) {
+            webSocketClient = new SockJsClient(List.of(new WebSocketTransport(new StandardWebSocketClient())));
+            url = "http://localhost:" + port + "/signal";
+        }
+        WebSocketStompClient client = new WebSocketStompClient(webSocketClient);
+        client.setMessageConverter(new CompositeMessageConverter(List.of(new StringMessageConverter() {
+            {
+                addSupportedMimeTypes(MimeTypeUtils.APPLICATION_JSON);
+            }
+        }, new ByteArrayMessageConverter())));
+        client.setTaskScheduler(scheduler);
+        client.setInboundMessageSizeLimit(1024 * 1024);
+
+        String prefix = transport.name().toLowerCase() + round + "-";
+        List<StompSession> sessions = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            StompHeaders headers = new StompHeaders();
+            headers.add("Authorization", "Bearer " + jwtUtil.generateToken(prefix + i, "USER"));
+            sessions.add(client.connectAsync(url, new WebSocketHttpHeaders(), headers, new StompSessionHandlerAdapter() {
+            }).get(60, TimeUnit.SECONDS));
+        }
+
+        CountDownLatch received = new CountDownLatch(CLIENTS * MESSAGES_PER_CLIENT);
+        Class<?> payloadType = transport == Transport.NATIVE_BINARY ? byte[].class : String.class;
+        for (int i = 0; i < CLIENTS; i++) {
+            // Register first: only the session that registered a peer may subscribe to its topics
+            StompHeaders register = new StompHeaders();
+            register.setDestination("/app/register");
+            register.setContentType(MimeTypeUtils.APPLICATION_JSON);
+            sessions.get(i).send(register, "{\"id\":\"" + prefix + i + "\",\"displayName\":\"Peer " + i + "\",\"online\":true}");
+            sessions.get(i).subscribe("/topic/webrtc/sdp/" + prefix + i, new StompFrameHandler() {
+                @Override
+                public Type getPayloadType(StompHeaders headers) {
+                    return payloadType;
+                }
+
+                @Override
+                public void handleFrame(StompHeaders headers, Object payload) {
+                    received.countDown();
+                }
+            });
+        }
+        Thread.sleep(1000);
+
+        byte[] sdpBytes = sdp.getBytes(StandardCharsets.UTF_8);
+        long start = System.nanoTime();
+        for (int m = 0; m < MESSAGES_PER_CLIENT; m++) {
+            for (int i = 0; i < CLIENTS; i++) {
+                StompHeaders headers = new StompHeaders();
+                headers.setDestination("/app/webrtc/sdp/" + prefix + ((i + 1) % CLIENTS));
+                if (transport == Transport.NATIVE_BINARY) {
+                    headers.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+                    sessions.get(i).send(headers, sdpBytes);
+                } else {
+                    sessions.get(i).send(headers, sdp);
+                }
+            }
+        }
+        boolean done = received.await(120, TimeUnit.SECONDS);
+        long nanos = System.nanoTime() - start;
+        long delivered = (long) CLIENTS * MESSAGES_PER_CLIENT - received.getCount();
+
+        System.out.printf("round %d %-13s %d x %d B SDP in %d ms = %.0f msg/s, %.1f MB/s%s%n",
+                round, transport, delivered, sdpBytes.length, nanos / 1_000_000, delivered * 1e9 / nanos,
+                delivered * sdpBytes.length * 1e3 / nanos, done ? "" : " (timed out)");
+
+        sessions.forEach(StompSession::disconnect);
+        scheduler.shutdown();
+        Thread.sleep(500);
+    }
+
+    private static String sdp() {
+        StringBuilder sdp = new StringBuilder("{\"type\":\"offer\",\"sdp\":\"v=0\\r\\no=- 4611731400430051336 2 IN IP4 127.0.0.1\\r\\n"
+                + "s=-\\r\\nt=0 0\\r\\na=group:BUNDLE 0 1\\r\\na=msid-semantic: WMS stream\\r\\n");
+        for (int codec = 96; sdp.length() < 4000; codec++) {
+            sdp.append("a=rtpmap:").append(codec).append(" VP8/90000\\r\\na=rtcp-fb:").append(codec)
+                    .append(" nack pli\\r\\na=fmtp:").append(codec).append(" x-google-start-bitrate=800\\r\\n");
+        }
+        return sdp.append("\"}").toString();
+    }
+}
@@ -0,0 +1,123 @@
+package dev.lunov.p2p_server.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChannelExecutorsTests {
+
+    private final MockEnvironment environment = new MockEnvironment();
+    private final ChannelExecutors executors = new ChannelExecutors();
+
+    @BeforeEach
+    void inject() {
+        ReflectionTestUtils.setField(executors, "environment", environment);
+    }
+
+    @AfterEach
+    void shutdown() {
+        executors.shutdown();
+    }
+
+    private static Thread runOn(InstrumentedExecutor executor) throws Exception {
+        CompletableFuture<Thread> thread = new CompletableFuture<>();
+        executor.execute(() -> thread.complete(Thread.currentThread()));
+        return thread.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void poolModeUsesTheConfiguredSizes() throws Exception {
+        environment.setProperty("websocket.executor.inbound.mode", "pool");
+        environment.setProperty("websocket.executor.inbound.core-pool-size", "3");
+        environment.setProperty("websocket.executor.inbound.max-pool-size", "5");
+
+        InstrumentedExecutor executor = executors.get("inbound", "none");
+        ThreadPoolTaskExecutor pool = (ThreadPoolTaskExecutor) executor.getDelegate();
+
+        assertEquals(3, pool.getCorePoolSize());
+        assertEquals(5, pool.getMaxPoolSize());
+        Thread thread = runOn(executor);
+        assertTrue(thread.getName().startsWith("inbound-"));
+        assertFalse(thread.isVirtual());
+        assertSame(executor, executors.get("inbound", "none"));
+    }
+
+    @Test
+    void virtualModeRunsEachTaskOnAVirtualThread() throws Exception {
+        InstrumentedExecutor executor = executors.get("outbound", "virtual");
+
+        Thread thread = runOn(executor);
+
+        assertTrue(thread.isVirtual());
+        assertTrue(thread.getName().startsWith("outbound-vt-"));
+        assertEquals("virtual", executor.getStats().get("mode"));
+    }
+
+    @Test
+    void noneModeLeavesTheChannelToSpring() {
+        assertNull(executors.get("broker", "none"));
+        assertEquals(Map.of("broker", Map.of("mode", "none")), executors.getStats());
+    }
+
+    @Test
+    void refusesAnUnknownMode() {
+        environment.setProperty("websocket.executor.inbound.mode", "fibers");
+
+        assertThrows(IllegalArgumentException.class, () -> executors.get("inbound", "pool"));
+    }
+
+    @Test
+    void countsCompletedAndRejectedTasks() throws Exception {
+        environment.setProperty("websocket.executor.inbound.mode", "pool");
+        environment.setProperty("websocket.executor.inbound.core-pool-size", "1");
+        environment.setProperty("websocket.executor.inbound.max-pool-size", "1");
+        environment.setProperty("websocket.executor.inbound.queue-capacity", "1");
+        InstrumentedExecutor executor = executors.get("inbound", "none");
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+
+        executor.execute(() -> {
+            awaitQuietly(release);
+            done.countDown();
+        });
+        executor.execute(done::countDown);
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        Map<String, Object> stats = executor.getStats();
+        assertEquals(2L, stats.get("submitted"));
+        assertEquals(1L, stats.get("rejected"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!stats.get("completed").equals(2L) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+            stats = executor.getStats();
+        }
+        assertEquals(2L, stats.get("completed"));
+        assertEquals(0L, stats.get("inFlight"));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
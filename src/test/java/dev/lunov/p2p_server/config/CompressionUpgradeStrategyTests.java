@@ -0,0 +1,76 @@
+package dev.lunov.p2p_server.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.websocket.Extension;
+import jakarta.websocket.server.ServerContainer;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CompressionUpgradeStrategyTests {
+
+    private static MockHttpServletRequest handshake() {
+        Extension deflate = new Extension() {
+            @Override
+            public String getName() {
+                return "permessage-deflate";
+            }
+
+            @Override
+            public List<Parameter> getParameters() {
+                return List.of();
+            }
+        };
+        ServerContainer container = (ServerContainer) Proxy.newProxyInstance(ServerContainer.class.getClassLoader(),
+                new Class<?>[]{ServerContainer.class},
+                (proxy, method, args) -> method.getName().equals("getInstalledExtensions") ? Set.of(deflate) : null);
+        MockServletContext servletContext = new MockServletContext();
+        servletContext.setAttribute(ServerContainer.class.getName(), container);
+        MockHttpServletRequest request = new MockHttpServletRequest(servletContext, "GET", "/signal-ws");
+        request.addHeader(WebSocketHttpHeaders.SEC_WEBSOCKET_EXTENSIONS, "permessage-deflate; client_max_window_bits");
+        request.addHeader("Host", "localhost");
+        return request;
+    }
+
+    private static List<String> supported(boolean compression) {
+        return new CompressionUpgradeStrategy(compression)
+                .getSupportedExtensions(new ServletServerHttpRequest(handshake())).stream()
+                .map(WebSocketExtension::getName)
+                .toList();
+    }
+
+    @Test
+    void offersDeflateOnlyWhenEnabled() {
+        assertEquals(List.of("permessage-deflate"), supported(true));
+        assertEquals(List.of(), supported(false));
+    }
+
+    @Test
+    void hidesTheExtensionOfferFromTheContainer() {
+        HttpServletRequest request = CompressionUpgradeStrategy.withoutExtensions(handshake());
+
+        assertNull(request.getHeader(WebSocketHttpHeaders.SEC_WEBSOCKET_EXTENSIONS));
+        assertNull(request.getHeader("sec-websocket-extensions"));
+        assertFalse(request.getHeaders(WebSocketHttpHeaders.SEC_WEBSOCKET_EXTENSIONS).hasMoreElements());
+        assertEquals(List.of("Host"), Collections.list(request.getHeaderNames()));
+        assertEquals("localhost", request.getHeader("Host"));
+    }
+
+    @Test
+    void reportsWhetherItIsEnabled() {
+        assertEquals(false, new CompressionUpgradeStrategy(false).getStats().get("enabled"));
+        assertEquals(true, new CompressionUpgradeStrategy(true).getStats().get("enabled"));
+    }
+}
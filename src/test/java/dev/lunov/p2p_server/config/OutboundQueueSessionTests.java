@@ -0,0 +1,186 @@
+package dev.lunov.p2p_server.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutboundQueueSessionTests {
+
+    private final List<String> written = new ArrayList<>();
+    private final List<CloseStatus> closed = new ArrayList<>();
+    // Drain tasks run only when the test says so
+    private final List<Runnable> tasks = new ArrayList<>();
+    private OutboundQueuePolicy policy;
+    private OutboundQueueSession session;
+
+    @BeforeEach
+    void setUp() {
+        policy = new OutboundQueuePolicy();
+        ReflectionTestUtils.setField(policy, "latestWinsDestinations", Set.of("/topic/peers"));
+        ReflectionTestUtils.setField(policy, "signalingPrefixes", List.of("/topic/webrtc/"));
+        ReflectionTestUtils.setField(policy, "bulkPrefixes", List.of("/topic/message/"));
+        ReflectionTestUtils.setField(policy, "queueLimitBytes", 1000L);
+        ReflectionTestUtils.setField(policy, "hardLimitBytes", 4000L);
+        ReflectionTestUtils.setField(policy, "slowConsumerMs", 10_000L);
+        WebSocketSession delegate = (WebSocketSession) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{WebSocketSession.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "getId" -> "s1";
+                    case "isOpen" -> closed.isEmpty();
+                    case "sendMessage" -> {
+                        written.add(((TextMessage) args[0]).getPayload());
+                        yield null;
+                    }
+                    case "close" -> {
+                        closed.add(args == null ? CloseStatus.NORMAL : (CloseStatus) args[0]);
+                        yield null;
+                    }
+                    default -> null;
+                });
+        session = new OutboundQueueSession(delegate, policy, tasks::add);
+    }
+
+    @AfterEach
+    void shutdown() {
+        policy.shutdown();
+    }
+
+    private static TextMessage frame(String destination, String body) {
+        return new TextMessage("MESSAGE\ndestination:" + destination + "\n\n" + body + "\0");
+    }
+
+    private void send(String destination, String body) throws IOException {
+        session.sendMessage(frame(destination, body));
+    }
+
+    private void runTasks() {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+    }
+
+    private List<String> writtenBodies() {
+        return written.stream().map(frame -> frame.substring(frame.indexOf("\n\n") + 2, frame.length() - 1)).toList();
+    }
+
+    @Test
+    void readsTheDestinationHeader() {
+        assertEquals("/topic/peers", OutboundQueueSession.destinationOf(frame("/topic/peers", "[]")));
+        assertNull(OutboundQueueSession.destinationOf(new TextMessage("ERROR\nmessage:x\n\n\0")));
+        assertNull(OutboundQueueSession.destinationOf(new TextMessage("MESSAGE\nid:1\n\ndestination:/x\n\0")));
+    }
+
+    @Test
+    void readsTheDestinationOfABinaryFrameWithoutDecodingTheBody() {
+        byte[] headers = "MESSAGE\ndestination:/topic/file/ice/p1\ncontent-type:application/octet-stream\n\n"
+                .getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(headers.length + 4).put(headers).put(new byte[]{(byte) 0xff, (byte) 0xfe, 0, 0});
+
+        assertEquals("/topic/file/ice/p1", OutboundQueueSession.destinationOf(new BinaryMessage(frame.flip())));
+    }
+
+    @Test
+    void keepsOnlyTheNewestLatestWinsFrame() throws IOException {
+        send("/topic/peers", "v1");
+        send("/topic/presence", "d1");
+        send("/topic/peers", "v2");
+        send("/topic/peers", "v3");
+        runTasks();
+
+        assertEquals(List.of("d1", "v3"), writtenBodies());
+        assertEquals(2L, policy.getStats().get("collapsedFrames"));
+        assertEquals(0, session.getQueuedBytes());
+    }
+
+    @Test
+    void closesAtOnceOverTheHardLimitCountingLatestWinsFrames() throws IOException {
+        send("/topic/peers", "x".repeat(3000));
+        assertTrue(closed.isEmpty());
+
+        send("/topic/presence", "x".repeat(1500));
+
+        assertEquals(List.of(CloseStatus.SESSION_NOT_RELIABLE), closed);
+        assertEquals(0, session.getQueuedBytes());
+        send("/topic/presence", "late");
+        runTasks();
+        assertTrue(written.isEmpty());
+        assertEquals(1L, policy.getStats().get("slowConsumersClosed"));
+    }
+
+    @Test
+    void closesASessionThatStaysOverTheLimit() throws IOException, InterruptedException {
+        ReflectionTestUtils.setField(policy, "slowConsumerMs", 20L);
+        send("/topic/peers", "x".repeat(1200));
+        Thread.sleep(40);
+        assertTrue(closed.isEmpty());
+
+        send("/topic/presence", "d1");
+
+        assertEquals(List.of(CloseStatus.SESSION_NOT_RELIABLE), closed);
+    }
+
+    @Test
+    void forgetsTheOverLimitTimeOnceTheQueueDrains() throws IOException, InterruptedException {
+        ReflectionTestUtils.setField(policy, "slowConsumerMs", 20L);
+        send("/topic/presence", "x".repeat(1200));
+        runTasks();
+        Thread.sleep(40);
+
+        send("/topic/presence", "d1");
+
+        assertTrue(closed.isEmpty());
+    }
+
+    @Test
+    void closeWaitsForQueuedFrames() throws IOException {
+        send("/topic/presence", "d1");
+        session.close(CloseStatus.POLICY_VIOLATION);
+        send("/topic/presence", "dropped");
+        assertTrue(closed.isEmpty());
+
+        runTasks();
+
+        assertEquals(List.of("d1"), writtenBodies());
+        assertEquals(List.of(CloseStatus.POLICY_VIOLATION), closed);
+    }
+
+    @Test
+    void writesSignalingBeforeDefaultBeforeBulk() throws IOException {
+        send("/topic/message/p1", "chat1");
+        send("/topic/presence", "d1");
+        send("/topic/webrtc/ice/p1", "ice1");
+        send("/topic/message/p1", "chat2");
+        send("/topic/webrtc/ice/p1", "ice2");
+        runTasks();
+
+        assertEquals(List.of("ice1", "ice2", "d1", "chat1", "chat2"), writtenBodies());
+        Map<?, ?> classes = (Map<?, ?>) policy.getStats().get("classes");
+        assertEquals(Map.of("queued", 0L, "sent", 2L), classes.get("signaling"));
+        assertEquals(Map.of("queued", 0L, "sent", 2L), classes.get("bulk"));
+    }
+
+    @Test
+    void classifiesByPrefix() {
+        assertEquals(TrafficClass.SIGNALING, policy.classify(null));
+        assertEquals(TrafficClass.SIGNALING, policy.classify("/topic/webrtc/sdp/p1"));
+        assertEquals(TrafficClass.BULK, policy.classify("/topic/message/p1"));
+        assertEquals(TrafficClass.DEFAULT, policy.classify("/topic/presence"));
+    }
+}
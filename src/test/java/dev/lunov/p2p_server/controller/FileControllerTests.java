@@ -0,0 +1,117 @@
+package dev.lunov.p2p_server.controller;
+
+import dev.lunov.p2p_server.service.ChannelFileStore;
+import dev.lunov.p2p_server.service.FileMetadataCache;
+import dev.lunov.p2p_server.service.StorageQuotas;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.mock.web.MockMultipartHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class FileControllerTests {
+
+    private static final int MB = 1024 * 1024;
+
+    @TempDir
+    Path root;
+
+    private ChannelFileStore store;
+    private StorageQuotas quotas;
+    private FileController controller;
+
+    // The stores' root constructors are package-private to their own package
+    private static <T> T create(Class<T> type, Path root) throws ReflectiveOperationException {
+        Constructor<T> constructor = type.getDeclaredConstructor(Path.class);
+        constructor.setAccessible(true);
+        return constructor.newInstance(root);
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        store = create(ChannelFileStore.class, root);
+        ReflectionTestUtils.setField(store, "fileMetadataCache", new FileMetadataCache());
+        store.init();
+        quotas = create(StorageQuotas.class, root);
+        ReflectionTestUtils.setField(quotas, "channelFileStore", store);
+        ReflectionTestUtils.setField(quotas, "userMb", 1L);
+        ReflectionTestUtils.setField(quotas, "channelMb", 1L);
+        ReflectionTestUtils.setField(quotas, "minFreeMb", 0L);
+        quotas.init();
+        controller = new FileController();
+        ReflectionTestUtils.setField(controller, "channelFileStore", store);
+        ReflectionTestUtils.setField(controller, "storageQuotas", quotas);
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("alice", null));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        SecurityContextHolder.clearContext();
+        store.shutdown();
+    }
+
+    private static MockMultipartHttpServletRequest upload(int contentLength, byte[] file) {
+        MockMultipartHttpServletRequest request = new MockMultipartHttpServletRequest() {
+            @Override
+            public MultipartFile getFile(String name) {
+                if (file == null) {
+                    throw new AssertionError("The body was parsed");
+                }
+                return super.getFile(name);
+            }
+        };
+        if (file != null) {
+            request.addFile(new MockMultipartFile("file", "notes.txt", "text/plain", file));
+        }
+        if (contentLength >= 0) {
+            request.setContent(new byte[contentLength]);
+        }
+        return request;
+    }
+
+    @Test
+    void storesAFileWithinTheQuota() {
+        ResponseEntity<Map<String, String>> response = controller.uploadFile(upload(300, new byte[100]));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(store.get(response.getBody().get("fileId")));
+        assertEquals(0L, quotas.getStats().get("reservedBytes"));
+    }
+
+    @Test
+    void refusesAnOverQuotaBodyBeforeParsingIt() {
+        ResponseEntity<Map<String, String>> response = controller.uploadFile(upload(2 * MB, null));
+
+        assertEquals(HttpStatus.CONTENT_TOO_LARGE, response.getStatusCode());
+        assertEquals(0L, quotas.getStats().get("reservedBytes"));
+        assertEquals(1L, quotas.getStats().get("rejectedOverQuota"));
+    }
+
+    @Test
+    void requiresAContentLength() {
+        ResponseEntity<Map<String, String>> response = controller.uploadFile(upload(-1, null));
+
+        assertEquals(HttpStatus.LENGTH_REQUIRED, response.getStatusCode());
+    }
+
+    @Test
+    void refusesAMissingOrEmptyFile() {
+        assertEquals(HttpStatus.BAD_REQUEST, controller.uploadFile(upload(200, new byte[0])).getStatusCode());
+        assertEquals(0L, quotas.getStats().get("reservedBytes"));
+    }
+}
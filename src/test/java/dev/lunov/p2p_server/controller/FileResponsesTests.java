@@ -0,0 +1,130 @@
+package dev.lunov.p2p_server.controller;
+
+import dev.lunov.p2p_server.service.FileMetadataCache;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class FileResponsesTests {
+
+    private static final String ETAG = "\"abc\"";
+
+    @TempDir
+    Path dir;
+
+    private FileMetadataCache.FileInfo file;
+
+    @BeforeEach
+    void writeFile() throws IOException {
+        Path path = Files.writeString(dir.resolve("digits.txt"), "0123456789");
+        file = new FileMetadataCache.FileInfo(path, 10, Files.getLastModifiedTime(path).toMillis(), ETAG, "text/plain");
+    }
+
+    private MockHttpServletResponse get(String range) throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/digits.txt");
+        if (range != null) {
+            request.addHeader(HttpHeaders.RANGE, range);
+        }
+        return serve(request);
+    }
+
+    private MockHttpServletResponse serve(MockHttpServletRequest request) throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FileResponses.serve(file, "digits.txt", request, response);
+        return response;
+    }
+
+    private static void assertPartial(MockHttpServletResponse response, String body, String contentRange) throws IOException {
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+        assertEquals(contentRange, response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(body.length(), response.getContentLengthLong());
+        assertEquals(body, response.getContentAsString());
+    }
+
+    private static void assertWhole(MockHttpServletResponse response) throws IOException {
+        assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+        assertNull(response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(10, response.getContentLengthLong());
+        assertEquals("0123456789", response.getContentAsString());
+    }
+
+    @Test
+    void servesTheWholeFileWithValidators() throws IOException {
+        MockHttpServletResponse response = get(null);
+
+        assertWhole(response);
+        assertEquals(ETAG, response.getHeader(HttpHeaders.ETAG));
+        assertEquals("bytes", response.getHeader(HttpHeaders.ACCEPT_RANGES));
+        assertEquals("text/plain", response.getContentType());
+    }
+
+    @Test
+    void servesSingleRanges() throws IOException {
+        assertPartial(get("bytes=2-5"), "2345", "bytes 2-5/10");
+        assertPartial(get("bytes=7-"), "789", "bytes 7-9/10");
+        assertPartial(get("bytes=-3"), "789", "bytes 7-9/10");
+        assertPartial(get("bytes=-30"), "0123456789", "bytes 0-9/10");
+        assertPartial(get("bytes=8-100"), "89", "bytes 8-9/10");
+    }
+
+    @Test
+    void refusesUnsatisfiableRanges() throws IOException {
+        for (String range : new String[]{"bytes=10-", "bytes=25-30", "bytes=-0"}) {
+            MockHttpServletResponse response = get(range);
+            assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatus(), range);
+            assertEquals("bytes */10", response.getHeader(HttpHeaders.CONTENT_RANGE), range);
+        }
+    }
+
+    @Test
+    void ignoresMalformedAndMultipleRanges() throws IOException {
+        for (String range : new String[]{"bytes=0-1,4-5", "items=0-1", "bytes=5-2", "bytes=x-3", "bytes=3"}) {
+            assertWhole(get(range));
+        }
+    }
+
+    @Test
+    void ifRangeMustMatchTheCurrentEtag() throws IOException {
+        MockHttpServletRequest matching = new MockHttpServletRequest("GET", "/digits.txt");
+        matching.addHeader(HttpHeaders.RANGE, "bytes=0-1");
+        matching.addHeader(HttpHeaders.IF_RANGE, ETAG);
+        assertPartial(serve(matching), "01", "bytes 0-1/10");
+
+        MockHttpServletRequest stale = new MockHttpServletRequest("GET", "/digits.txt");
+        stale.addHeader(HttpHeaders.RANGE, "bytes=0-1");
+        stale.addHeader(HttpHeaders.IF_RANGE, "\"old\"");
+        assertWhole(serve(stale));
+    }
+
+    @Test
+    void answersConditionalRequestsWithNotModified() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/digits.txt");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, ETAG);
+        MockHttpServletResponse response = serve(request);
+
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void headSendsLengthWithoutBody() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("HEAD", "/digits.txt");
+        request.addHeader(HttpHeaders.RANGE, "bytes=1-3");
+        MockHttpServletResponse response = serve(request);
+
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+        assertEquals(3, response.getContentLengthLong());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+}
@@ -0,0 +1,114 @@
+package dev.lunov.p2p_server.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimitInterceptorTests {
+
+    private static RateLimitInterceptor interceptor(MockEnvironment environment) {
+        RateLimitInterceptor interceptor = new RateLimitInterceptor();
+        ReflectionTestUtils.setField(interceptor, "environment", environment);
+        ReflectionTestUtils.setField(interceptor, "enabled", true);
+        interceptor.init();
+        return interceptor;
+    }
+
+    private static Message<byte[]> frame(StompCommand command, String sessionId, String destination) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+        accessor.setSessionId(sessionId);
+        accessor.setDestination(destination);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static boolean send(RateLimitInterceptor interceptor, String sessionId, String destination) {
+        return interceptor.preSend(frame(StompCommand.SEND, sessionId, destination), null) != null;
+    }
+
+    @Test
+    void classifiesDestinationsByPrefix() {
+        assertEquals(RateLimitInterceptor.LimitClass.CONTROL, RateLimitInterceptor.LimitClass.of("/app/register"));
+        assertEquals(RateLimitInterceptor.LimitClass.SIGNALING, RateLimitInterceptor.LimitClass.of("/app/webrtc/ice/peer1"));
+        assertEquals(RateLimitInterceptor.LimitClass.MESSAGING, RateLimitInterceptor.LimitClass.of("/app/channel/message/general"));
+        assertEquals(RateLimitInterceptor.LimitClass.OTHER, RateLimitInterceptor.LimitClass.of("/app/status"));
+    }
+
+    @Test
+    void allowsTheBurstThenDrops() {
+        RateLimitInterceptor interceptor = interceptor(new MockEnvironment()
+                .withProperty("rate-limit.messaging.per-second", "1")
+                .withProperty("rate-limit.messaging.burst", "3"));
+
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(interceptor.preSend(frame(StompCommand.SEND, "s1", "/app/message/peer2"), null));
+        }
+        assertNull(interceptor.preSend(frame(StompCommand.SEND, "s1", "/app/message/peer2"), null));
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> messaging = (Map<String, Object>) interceptor.getStats().get("messaging");
+        assertEquals(3L, messaging.get("accepted"));
+        assertEquals(1L, messaging.get("rejected"));
+        assertEquals(3L, messaging.get("burst"));
+    }
+
+    @Test
+    void bucketsAreSeparatePerUserAndClass() {
+        RateLimitInterceptor interceptor = interceptor(new MockEnvironment()
+                .withProperty("rate-limit.messaging.per-second", "1")
+                .withProperty("rate-limit.messaging.burst", "1"));
+
+        assertTrue(send(interceptor, "s1", "/app/message/peer2"));
+        assertFalse(send(interceptor, "s1", "/app/message/peer2"));
+        assertTrue(send(interceptor, "s2", "/app/message/peer2"));
+        assertTrue(send(interceptor, "s1", "/app/webrtc/ice/peer2"));
+    }
+
+    @Test
+    void ignoresFramesOutsideApplicationSends() {
+        RateLimitInterceptor interceptor = interceptor(new MockEnvironment()
+                .withProperty("rate-limit.other.per-second", "1")
+                .withProperty("rate-limit.other.burst", "1"));
+
+        for (int i = 0; i < 5; i++) {
+            assertNotNull(interceptor.preSend(frame(StompCommand.SUBSCRIBE, "s1", "/app/status"), null));
+            assertNotNull(interceptor.preSend(frame(StompCommand.SEND, "s1", "/topic/status"), null));
+        }
+    }
+
+    @Test
+    void refillsAtTheConfiguredRateAndForgetsIdleUsers() throws InterruptedException {
+        RateLimitInterceptor interceptor = interceptor(new MockEnvironment()
+                .withProperty("rate-limit.control.per-second", "50")
+                .withProperty("rate-limit.control.burst", "2"));
+
+        assertTrue(send(interceptor, "s1", "/app/register"));
+        assertTrue(send(interceptor, "s1", "/app/register"));
+        assertEquals(1, interceptor.getStats().get("trackedUsers"));
+
+        Thread.sleep(100);
+        interceptor.evictIdle();
+        assertEquals(0, interceptor.getStats().get("trackedUsers"));
+        assertTrue(send(interceptor, "s1", "/app/register"));
+        assertTrue(send(interceptor, "s1", "/app/register"));
+    }
+
+    @Test
+    void rejectsNonPositiveLimits() {
+        MockEnvironment environment = new MockEnvironment().withProperty("rate-limit.signaling.burst", "0");
+        assertThrows(IllegalArgumentException.class, () -> interceptor(environment));
+    }
+}
@@ -0,0 +1,75 @@
+package dev.lunov.p2p_server.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CallRegistryTests {
+
+    private final List<String> sent = new ArrayList<>();
+    private CallRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        SignalRouter router = new SignalRouter() {
+            @Override
+            public boolean send(String destination, Object payload, Map<String, String> nativeHeaders) {
+                sent.add(destination + (nativeHeaders.isEmpty() ? "" : " " + nativeHeaders));
+                return true;
+            }
+        };
+        registry = new CallRegistry();
+        ReflectionTestUtils.setField(registry, "signalRouter", router);
+        ReflectionTestUtils.setField(registry, "ringTimeoutMs", 45_000L);
+        ReflectionTestUtils.setField(registry, "maxConnectedMinutes", 240L);
+        registry.init();
+    }
+
+    @AfterEach
+    void shutdown() {
+        registry.shutdown();
+    }
+
+    private long firstSdpCount() {
+        return (Long) ((Map<?, ?>) registry.getStats().get("answerToFirstSdp")).get("count");
+    }
+
+    @Test
+    void onlyAnSdpBetweenTheCallPartiesCompletesSetup() {
+        registry.call("alice", "bob");
+        registry.answer("alice", "bob", true);
+
+        registry.onSdp("mallory", "bob");
+        registry.onSdp(null, "alice");
+        assertEquals(0, firstSdpCount());
+
+        registry.onSdp("alice", "bob");
+        registry.onSdp("bob", "alice");
+        assertEquals(1, firstSdpCount());
+    }
+
+    @Test
+    void ignoresSdpBeforeTheAnswer() {
+        registry.call("alice", "bob");
+
+        registry.onSdp("alice", "bob");
+
+        assertEquals(CallRegistry.State.RINGING, registry.getState("bob"));
+        assertEquals(0, firstSdpCount());
+    }
+
+    @Test
+    void refusesACallToABusyPeer() {
+        registry.call("alice", "bob");
+
+        assertEquals(CallRegistry.Decision.BUSY, registry.call("carol", "bob"));
+        assertEquals(List.of("/topic/answer/carol {" + CallRegistry.REJECTED_HEADER + "=busy}"), sent);
+    }
+}
@@ -0,0 +1,201 @@
+package dev.lunov.p2p_server.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChannelFileStoreTests {
+
+    @TempDir
+    Path root;
+
+    private FileMetadataCache metadata;
+    private ChannelFileStore store;
+
+    @BeforeEach
+    void open() throws IOException {
+        store = open(new FileMetadataCache());
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        store.shutdown();
+    }
+
+    private ChannelFileStore open(FileMetadataCache cache) throws IOException {
+        metadata = cache;
+        ChannelFileStore opened = new ChannelFileStore(root);
+        ReflectionTestUtils.setField(opened, "fileMetadataCache", cache);
+        opened.init();
+        return opened;
+    }
+
+    private ChannelFileStore reopen() throws IOException {
+        store.shutdown();
+        store = open(new FileMetadataCache());
+        return store;
+    }
+
+    private ChannelFileStore.StoredFile store(String fileId, String content, String owner, String channelId) throws IOException {
+        return store.store(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), fileId, owner, channelId);
+    }
+
+    private long stat(String name) {
+        return ((Number) store.getStats().get(name)).longValue();
+    }
+
+    @Test
+    void identicalContentSharesOneBlobUntilTheLastReferenceGoes() throws IOException {
+        ChannelFileStore.StoredFile first = store("a.txt", "same bytes", "alice", "general");
+        ChannelFileStore.StoredFile second = store("b.txt", "same bytes", "bob", "random");
+        Path blob = store.blobPath(first.hash());
+
+        assertEquals(first.hash(), second.hash());
+        assertEquals(1, stat("blobs"));
+        assertEquals(2, stat("files"));
+        assertEquals(10, stat("savedBytes"));
+        assertEquals(1, stat("duplicates"));
+
+        assertTrue(store.delete("a.txt"));
+        assertFalse(store.delete("a.txt"));
+        assertTrue(Files.exists(blob));
+
+        assertTrue(store.delete("b.txt"));
+        assertFalse(Files.exists(blob));
+        assertEquals(0, stat("blobs"));
+        assertEquals(0, stat("storedBytes"));
+    }
+
+    @Test
+    void reusingAFileIdWithTheSameContentKeepsTheBlob() throws IOException {
+        ChannelFileStore.StoredFile first = store("a.txt", "content", "alice", null);
+        store("a.txt", "content", "alice", null);
+
+        assertEquals(1, stat("files"));
+        assertTrue(Files.exists(store.blobPath(first.hash())));
+        assertEquals(7, stat("referencedBytes"));
+    }
+
+    @Test
+    void listenersSeeReplacementsAsDeleteThenStore() throws IOException {
+        List<String> events = new ArrayList<>();
+        store.addListener(new ChannelFileStore.Listener() {
+            @Override
+            public void stored(ChannelFileStore.StoredFile file) {
+                events.add("+" + file.fileId() + ":" + file.size());
+            }
+
+            @Override
+            public void deleted(ChannelFileStore.StoredFile file) {
+                events.add("-" + file.fileId() + ":" + file.size());
+            }
+        });
+
+        store("a.txt", "one", "alice", null);
+        store("a.txt", "three", "alice", null);
+        store.delete("a.txt");
+
+        assertEquals(List.of("+a.txt:3", "-a.txt:3", "+a.txt:5", "-a.txt:5"), events);
+    }
+
+    @Test
+    void replaysTheManifestAfterARestart() throws IOException {
+        ChannelFileStore.StoredFile kept = store("kept.txt", "kept", "alice smith", "general");
+        store("gone.txt", "gone", "bob", null);
+        store.delete("gone.txt");
+
+        reopen();
+
+        ChannelFileStore.StoredFile replayed = store.get("kept.txt");
+        assertNotNull(replayed);
+        assertEquals(kept.hash(), replayed.hash());
+        assertEquals(kept.createdAt(), replayed.createdAt());
+        assertEquals("alice smith", replayed.owner());
+        assertEquals("general", replayed.channelId());
+        assertNull(store.get("gone.txt"));
+        assertEquals(1, stat("blobs"));
+        assertEquals(List.of("+ kept.txt " + kept.hash() + " 4 " + kept.createdAt() + " alice+smith general"),
+                Files.readAllLines(root.resolve("blobs").resolve("manifest")));
+    }
+
+    @Test
+    void acceptsManifestLinesWithoutOwnerAndChannel() throws IOException {
+        ChannelFileStore.StoredFile file = store("old.txt", "old", "alice", "general");
+        store.shutdown();
+        Files.writeString(root.resolve("blobs").resolve("manifest"),
+                "+ old.txt " + file.hash() + " 3 " + file.createdAt() + "\n");
+
+        store = open(new FileMetadataCache());
+
+        ChannelFileStore.StoredFile replayed = store.get("old.txt");
+        assertNotNull(replayed);
+        assertNull(replayed.owner());
+        assertNull(replayed.channelId());
+    }
+
+    @Test
+    void startupDropsOrphansAndFilesWhoseBlobIsMissing() throws IOException {
+        ChannelFileStore.StoredFile lost = store("lost.txt", "lost", "alice", null);
+        store("kept.txt", "kept", "alice", null);
+        Files.delete(store.blobPath(lost.hash()));
+        Path orphan = store.blobPath(HexFormat.of().formatHex(new byte[32]));
+        Files.writeString(orphan, "nobody points here");
+        Path partial = root.resolve("blobs").resolve("upload123.tmp");
+        Files.writeString(partial, "cut short");
+
+        reopen();
+
+        assertNull(store.get("lost.txt"));
+        assertNotNull(store.get("kept.txt"));
+        assertFalse(Files.exists(orphan));
+        assertFalse(Files.exists(partial));
+        assertEquals(1, stat("files"));
+        assertEquals(1, stat("blobs"));
+    }
+
+    @Test
+    void seedsTheMetadataCacheFromBlobNames() throws IOException {
+        ChannelFileStore.StoredFile file = store("a.txt", "cached", "alice", null);
+
+        reopen();
+        FileMetadataCache.FileInfo info = metadata.get(store.blobPath(file.hash()));
+
+        assertEquals("\"" + file.hash() + "\"", info.etag());
+        assertEquals(ChannelFileStore.OCTET_STREAM, info.contentType());
+        assertEquals(0L, metadata.getStats().get("computed"));
+    }
+
+    @Test
+    void importsLegacyChannelFiles() throws IOException {
+        store.shutdown();
+        Path legacy = Files.createDirectories(root.resolve("channels"));
+        Files.writeString(legacy.resolve("photo.jpg"), "legacy");
+        Files.writeString(legacy.resolve("bad name.jpg"), "dropped");
+
+        store = open(new FileMetadataCache());
+
+        ChannelFileStore.StoredFile imported = store.get("photo.jpg");
+        assertNotNull(imported);
+        assertEquals("image/jpeg", imported.contentType());
+        assertTrue(Files.exists(store.blobPath(imported.hash())));
+        assertFalse(Files.exists(legacy.resolve("photo.jpg")));
+        assertFalse(Files.exists(legacy.resolve("bad name.jpg")));
+    }
+}
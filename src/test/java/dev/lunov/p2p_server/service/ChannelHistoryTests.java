@@ -0,0 +1,107 @@
+package dev.lunov.p2p_server.service;
+
+import dev.lunov.p2p_server.dto.ChannelHistoryPage;
+import dev.lunov.p2p_server.model.ChannelMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChannelHistoryTests {
+
+    private static ChannelHistory history(int size, int maxMessageBytes) {
+        ChannelHistory history = new ChannelHistory();
+        ReflectionTestUtils.setField(history, "size", size);
+        ReflectionTestUtils.setField(history, "maxMessageBytes", maxMessageBytes);
+        return history;
+    }
+
+    private static List<Long> seqs(ChannelHistoryPage page) {
+        return page.messages().stream().map(ChannelMessage::seq).toList();
+    }
+
+    @Test
+    void pagesThroughMessagesOldestFirst() {
+        ChannelHistory history = history(8, 1024);
+        for (int i = 1; i <= 5; i++) {
+            assertEquals(i, history.append("general", "m" + i));
+        }
+
+        ChannelHistoryPage first = history.since("general", 0, 3);
+        assertEquals(List.of(1L, 2L, 3L), seqs(first));
+        assertEquals("m1", first.messages().get(0).message());
+        assertEquals(3, first.next());
+        assertFalse(first.gap());
+
+        ChannelHistoryPage second = history.since("general", first.next(), 3);
+        assertEquals(List.of(4L, 5L), seqs(second));
+        assertEquals(5, second.next());
+
+        ChannelHistoryPage empty = history.since("general", second.next(), 3);
+        assertTrue(empty.messages().isEmpty());
+        assertEquals(5, empty.next());
+        assertFalse(empty.gap());
+    }
+
+    @Test
+    void reportsAGapOnceOlderMessagesAreOverwritten() {
+        ChannelHistory history = history(4, 1024);
+        for (int i = 1; i <= 10; i++) {
+            history.append("general", "m" + i);
+        }
+
+        ChannelHistoryPage page = history.since("general", 2, 50);
+        assertEquals(List.of(7L, 8L, 9L, 10L), seqs(page));
+        assertEquals(10, page.next());
+        assertTrue(page.gap());
+    }
+
+    @Test
+    void oversizedMessagesKeepTheirSequenceAsAGap() {
+        ChannelHistory history = history(8, 4);
+        history.append("general", "ok");
+        history.append("general", "far too long");
+        history.append("general", "ok2");
+
+        ChannelHistoryPage page = history.since("general", 0, 10);
+        assertEquals(List.of(1L, 3L), seqs(page));
+        assertEquals(3, page.next());
+        assertTrue(page.gap());
+    }
+
+    @Test
+    void stopsAtASlotWhoseWriterIsStillInFlight() {
+        ChannelHistory history = history(4, 1024);
+        for (int i = 1; i <= 4; i++) {
+            history.append("general", "m" + i);
+        }
+        // Sequence 5 taken but not written yet: its slot still holds sequence 1
+        Map<?, ?> rings = (Map<?, ?>) ReflectionTestUtils.getField(history, "rings");
+        ((AtomicLong) ReflectionTestUtils.getField(rings.get("general"), "sequence")).incrementAndGet();
+        history.append("general", "m6");
+
+        ChannelHistoryPage page = history.since("general", 2, 10);
+        assertEquals(List.of(3L, 4L), seqs(page));
+        assertEquals(4, page.next());
+        assertFalse(page.gap());
+    }
+
+    @Test
+    void unknownAndRemovedChannelsAreEmpty() {
+        ChannelHistory history = history(4, 1024);
+        history.append("general", "m1");
+        history.remove("general");
+
+        ChannelHistoryPage page = history.since("general", 7, 10);
+        assertTrue(page.messages().isEmpty());
+        assertEquals(7, page.next());
+        assertFalse(page.gap());
+        assertEquals(0, history.getStats().get("channels"));
+    }
+}
@@ -0,0 +1,114 @@
+package dev.lunov.p2p_server.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IceCoalescerTests {
+
+    private static final String ICE = "/topic/webrtc/ice/p1";
+
+    private record Sent(String destination, Object payload, Map<String, String> headers) {
+    }
+
+    private final List<Sent> sent = new CopyOnWriteArrayList<>();
+    private IceCoalescer coalescer;
+
+    private void create(boolean enabled, long windowMs) {
+        SignalRouter router = new SignalRouter() {
+            @Override
+            public boolean send(String destination, Object payload) {
+                return send(destination, payload, Map.of());
+            }
+
+            @Override
+            public boolean send(String destination, Object payload, Map<String, String> nativeHeaders) {
+                sent.add(new Sent(destination, payload, nativeHeaders));
+                return true;
+            }
+        };
+        coalescer = new IceCoalescer();
+        ReflectionTestUtils.setField(coalescer, "signalRouter", router);
+        ReflectionTestUtils.setField(coalescer, "enabled", enabled);
+        ReflectionTestUtils.setField(coalescer, "windowMs", windowMs);
+    }
+
+    @AfterEach
+    void shutdown() {
+        coalescer.shutdown();
+    }
+
+    private void awaitSent(int frames) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sent.size() < frames && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(frames, sent.size());
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        Map<?, ?> pending = (Map<?, ?>) ReflectionTestUtils.getField(coalescer, "pending");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!pending.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(pending.isEmpty());
+    }
+
+    @Test
+    void sendsEachCandidateAloneWhenDisabled() {
+        create(false, 1000);
+        coalescer.relay(ICE, "{\"c\":1}");
+        coalescer.relay(ICE, "{\"c\":2}");
+
+        assertEquals(List.of(new Sent(ICE, "{\"c\":1}", Map.of()), new Sent(ICE, "{\"c\":2}", Map.of())), sent);
+        assertEquals(2L, coalescer.getStats().get("framesOut"));
+    }
+
+    @Test
+    void sendsTheFirstCandidateAtOnceAndBatchesTheRestInOrder() throws InterruptedException {
+        create(true, 50);
+        coalescer.relay(ICE, "{\"c\":1}");
+        assertEquals(List.of(new Sent(ICE, "{\"c\":1}", Map.of())), sent);
+
+        coalescer.relay(ICE, "{\"c\":2}");
+        coalescer.relay(ICE, "{\"c\":3}");
+        coalescer.relay(ICE, "{\"c\":4}");
+        awaitSent(2);
+
+        assertEquals(new Sent(ICE, "[{\"c\":2},{\"c\":3},{\"c\":4}]", Map.of(IceCoalescer.BATCH_HEADER, "3")), sent.get(1));
+        awaitIdle();
+        assertEquals(4L, coalescer.getStats().get("candidatesIn"));
+        assertEquals(2L, coalescer.getStats().get("framesOut"));
+    }
+
+    @Test
+    void sendsASingleLateCandidateWithoutTheBatchHeader() throws InterruptedException {
+        create(true, 50);
+        coalescer.relay(ICE, "{\"c\":1}");
+        coalescer.relay(ICE, "{\"c\":2}");
+        awaitSent(2);
+
+        assertEquals(new Sent(ICE, "{\"c\":2}", Map.of()), sent.get(1));
+    }
+
+    @Test
+    void keepsTargetsApart() throws InterruptedException {
+        create(true, 50);
+        coalescer.relay(ICE, "{\"c\":1}");
+        coalescer.relay("/topic/webrtc/ice/p2", "{\"c\":2}");
+        coalescer.relay(ICE, "{\"c\":3}");
+        awaitSent(3);
+
+        assertEquals(List.of("/topic/webrtc/ice/p1", "/topic/webrtc/ice/p2", "/topic/webrtc/ice/p1"),
+                sent.stream().map(Sent::destination).toList());
+        awaitIdle();
+    }
+}
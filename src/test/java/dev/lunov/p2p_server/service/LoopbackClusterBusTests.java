@@ -0,0 +1,135 @@
+package dev.lunov.p2p_server.service;
+
+import dev.lunov.p2p_server.model.ClusterMessage;
+import dev.lunov.p2p_server.model.Peer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoopbackClusterBusTests {
+
+    // Networks are static; a fresh name keeps tests apart
+    private final String network = "test-" + UUID.randomUUID();
+    private final List<LoopbackClusterBus> buses = new ArrayList<>();
+
+    @AfterEach
+    void close() {
+        buses.forEach(LoopbackClusterBus::close);
+    }
+
+    private LoopbackClusterBus join(String nodeId) {
+        LoopbackClusterBus bus = new LoopbackClusterBus(network, nodeId);
+        bus.join();
+        buses.add(bus);
+        return bus;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private static ClusterMessage frame(String source) {
+        return ClusterMessage.frame(ClusterMessage.Type.DELIVER, source, "/topic/webrtc/ice/p1", "text/plain",
+                Map.of(), new byte[]{1});
+    }
+
+    @Test
+    void sendsToOneNodeAndPublishesToAllOthers() throws InterruptedException {
+        LoopbackClusterBus a = join("node-a");
+        LoopbackClusterBus b = join("node-b");
+        LoopbackClusterBus c = join("node-c");
+        List<String> received = new CopyOnWriteArrayList<>();
+        a.setReceiver(message -> received.add("a<-" + message.sourceNode()));
+        b.setReceiver(message -> received.add("b<-" + message.sourceNode()));
+        c.setReceiver(message -> received.add("c<-" + message.sourceNode()));
+
+        assertTrue(a.send("node-b", frame("node-a")));
+        assertFalse(a.send("node-a", frame("node-a")));
+        assertFalse(a.send("node-x", frame("node-a")));
+        c.publish(frame("node-c"));
+
+        await(() -> received.size() == 3);
+        assertEquals(Set.of("b<-node-a", "a<-node-c", "b<-node-c"), Set.copyOf(received));
+        assertEquals(Set.of("node-a", "node-b", "node-c"), a.getNodes());
+    }
+
+    @Test
+    void refusesASecondNodeWithTheSameIdAndForgetsClosedNodes() {
+        LoopbackClusterBus a = join("node-a");
+        LoopbackClusterBus b = join("node-b");
+
+        assertThrows(IllegalStateException.class, () -> new LoopbackClusterBus(network, "node-b").join());
+
+        b.close();
+        assertEquals(Set.of("node-a"), a.getNodes());
+        assertFalse(a.send("node-b", frame("node-a")));
+    }
+
+    private record Node(PresenceService presence, SignalRouter router, List<Message<?>> delivered) {
+    }
+
+    private Node node(String nodeId) {
+        LoopbackClusterBus bus = join(nodeId);
+        List<Message<?>> delivered = new CopyOnWriteArrayList<>();
+        ExecutorSubscribableChannel outbound = new ExecutorSubscribableChannel();
+        outbound.subscribe(delivered::add);
+        SimpMessagingTemplate messagingTemplate = new SimpMessagingTemplate(outbound);
+        messagingTemplate.setMessageConverter(new StringMessageConverter());
+
+        PresenceService presence = new PresenceService();
+        ReflectionTestUtils.setField(presence, "messagingTemplate", new SimpMessagingTemplate(new ExecutorSubscribableChannel()));
+        ReflectionTestUtils.setField(presence, "clusterBus", bus);
+        SignalRouter router = new SignalRouter();
+        ReflectionTestUtils.setField(router, "clientOutboundChannel", outbound);
+        ReflectionTestUtils.setField(router, "messagingTemplate", messagingTemplate);
+        ReflectionTestUtils.setField(router, "presenceService", presence);
+        ReflectionTestUtils.setField(router, "clusterBus", bus);
+        router.init();
+        ClusterReplicator replicator = new ClusterReplicator();
+        ReflectionTestUtils.setField(replicator, "clusterBus", bus);
+        ReflectionTestUtils.setField(replicator, "presenceService", presence);
+        ReflectionTestUtils.setField(replicator, "signalRouter", router);
+        replicator.init();
+        return new Node(presence, router, delivered);
+    }
+
+    @Test
+    void forwardsAFrameToTheNodeThePeerIsConnectedTo() throws InterruptedException {
+        Node a = node("node-a");
+        Node b = node("node-b");
+        b.presence().register(new Peer("p1", "10.0.0.1", "android", "Peer", true, "idle", null, null, null), "s1");
+        assertTrue(b.router().subscribe("s1", "sub0", "/topic/webrtc/ice/p1"));
+        await(() -> "node-b".equals(a.presence().ownerOf("p1")));
+
+        assertTrue(a.router().send("/topic/webrtc/ice/p1", "candidate"));
+
+        await(() -> b.delivered().size() == 1);
+        Message<?> message = b.delivered().get(0);
+        assertEquals("s1", SimpMessageHeaderAccessor.wrap(message).getSessionId());
+        assertArrayEquals("candidate".getBytes(StandardCharsets.UTF_8), (byte[]) message.getPayload());
+    }
+}
@@ -0,0 +1,132 @@
+package dev.lunov.p2p_server.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MailboxSegmentTests {
+
+    @TempDir
+    Path dir;
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void appendsRecordsBackToBackAndReadsThemBack() throws IOException {
+        MailboxSegment segment = MailboxSegment.open(dir, 7, 4096);
+        try {
+            assertEquals(dir.resolve("0000000000000007.seg"), segment.path);
+            assertEquals(7, MailboxSegment.idOf(segment.path));
+            assertEquals(4096, segment.capacity());
+
+            int first = segment.append(1, 1000, bytes("peer-a"), bytes("{\"text\":\"hi\"}"), false);
+            int second = segment.append(2, 2000, bytes("peer-b"), new byte[]{0, 1, 2}, true);
+
+            assertEquals(0, first);
+            assertEquals(first + segment.length(first), second);
+            assertEquals(second + segment.length(second), segment.writePosition);
+            assertEquals(0, segment.length(segment.writePosition));
+            assertEquals(2, segment.liveRecords);
+
+            assertEquals(1, segment.seq(first));
+            assertEquals(1000, segment.sentAt(first));
+            assertEquals("peer-a", segment.recipient(first));
+            assertArrayEquals(bytes("{\"text\":\"hi\"}"), segment.payload(first));
+            assertFalse(segment.isBinary(first));
+
+            assertEquals("peer-b", segment.recipient(second));
+            assertArrayEquals(new byte[]{0, 1, 2}, segment.payload(second));
+            assertTrue(segment.isBinary(second));
+        } finally {
+            segment.delete();
+        }
+    }
+
+    @Test
+    void refusesARecordThatWouldOverwriteTheTerminator() throws IOException {
+        int recordBytes = MailboxSegment.HEADER_BYTES + 1 + 10;
+        MailboxSegment segment = MailboxSegment.open(dir, 1, recordBytes + 4);
+        try {
+            assertEquals(-1, segment.append(1, 0, bytes("p"), new byte[11], false));
+            assertEquals(0, segment.append(1, 0, bytes("p"), new byte[10], false));
+            assertEquals(-1, segment.append(2, 0, bytes("p"), new byte[0], false));
+        } finally {
+            segment.delete();
+        }
+    }
+
+    @Test
+    void markDoneKeepsTheBinaryFlagAndCountsOnce() throws IOException {
+        MailboxSegment segment = MailboxSegment.open(dir, 1, 4096);
+        try {
+            int offset = segment.append(1, 0, bytes("p"), new byte[]{42}, true);
+            long bytes = segment.liveBytes;
+
+            segment.markDone(offset);
+            segment.markDone(offset);
+
+            assertFalse(segment.isLive(offset));
+            assertTrue(segment.isBinary(offset));
+            assertEquals(0, segment.liveRecords);
+            assertEquals(0, segment.liveBytes);
+            assertEquals(bytes, segment.length(offset));
+        } finally {
+            segment.delete();
+        }
+    }
+
+    @Test
+    void copyFromKeepsSequenceTimestampAndFlags() throws IOException {
+        MailboxSegment source = MailboxSegment.open(dir, 1, 4096);
+        MailboxSegment target = MailboxSegment.open(dir, 2, 4096);
+        try {
+            source.append(1, 100, bytes("skip"), bytes("x"), false);
+            int offset = source.append(9, 900, bytes("peer-c"), new byte[]{7, 8}, true);
+
+            int copied = target.copyFrom(source, offset);
+
+            assertEquals(0, copied);
+            assertEquals(9, target.seq(copied));
+            assertEquals(900, target.sentAt(copied));
+            assertEquals("peer-c", target.recipient(copied));
+            assertArrayEquals(new byte[]{7, 8}, target.payload(copied));
+            assertTrue(target.isBinary(copied));
+            assertTrue(target.isLive(copied));
+        } finally {
+            source.delete();
+            target.delete();
+        }
+    }
+
+    @Test
+    void recordsSurviveReopeningTheFile() throws IOException {
+        MailboxSegment written = MailboxSegment.open(dir, 3, 4096);
+        int offset = written.append(5, 500, bytes("peer-d"), bytes("later"), false);
+        written.markDone(written.append(6, 600, bytes("peer-d"), bytes("done"), false));
+        written.force();
+
+        MailboxSegment reopened = MailboxSegment.open(dir, 3, 4096);
+        try {
+            assertEquals(5, reopened.seq(offset));
+            assertArrayEquals(bytes("later"), reopened.payload(offset));
+            int next = offset + reopened.length(offset);
+            assertFalse(reopened.isLive(next));
+            assertEquals(0, reopened.length(next + reopened.length(next)));
+        } finally {
+            reopened.delete();
+            written.delete();
+        }
+        assertFalse(Files.exists(dir.resolve("0000000000000003.seg")));
+    }
+}
@@ -0,0 +1,102 @@
+package dev.lunov.p2p_server.service;
+
+import dev.lunov.p2p_server.dto.PeerPage;
+import dev.lunov.p2p_server.model.Peer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PeerDirectoryTests {
+
+    private static Peer peer(String id, String name, String platform, String status) {
+        return new Peer(id, "10.0.0.1", platform, name, true, status, null, null, null);
+    }
+
+    private static List<String> ids(PeerPage page) {
+        return page.peers().stream().map(Peer::id).toList();
+    }
+
+    @Test
+    void pagesThroughAllPeersInNameOrderWithoutGapsOrRepeats() {
+        PeerDirectory directory = new PeerDirectory();
+        for (int i = 0; i < 25; i++) {
+            directory.put(null, peer("p" + i, String.format("user%02d", 24 - i), "android", "idle"));
+        }
+
+        List<String> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            PeerPage page = directory.search(null, null, null, cursor, 10);
+            seen.addAll(ids(page));
+            cursor = page.nextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(25, seen.size());
+        assertEquals("p24", seen.get(0));
+        assertEquals("p0", seen.get(24));
+        assertEquals(25, seen.stream().distinct().count());
+    }
+
+    @Test
+    void cursorSurvivesPeersJoiningBeforeIt() {
+        PeerDirectory directory = new PeerDirectory();
+        directory.put(null, peer("b", "bob", "ios", "idle"));
+        directory.put(null, peer("c", "carol", "ios", "idle"));
+        directory.put(null, peer("d", "dave", "ios", "idle"));
+
+        PeerPage first = directory.search(null, null, null, null, 2);
+        assertEquals(List.of("b", "c"), ids(first));
+        assertNotNull(first.nextCursor());
+
+        directory.put(null, peer("a", "alice", "ios", "idle"));
+        PeerPage second = directory.search(null, null, null, first.nextCursor(), 2);
+        assertEquals(List.of("d"), ids(second));
+        assertNull(second.nextCursor());
+    }
+
+    @Test
+    void filtersByPrefixPlatformAndStatus() {
+        PeerDirectory directory = new PeerDirectory();
+        directory.put(null, peer("1", "Anna", "android", "busy"));
+        directory.put(null, peer("2", "andrew", "ios", "idle"));
+        directory.put(null, peer("3", "Ben", "android", "idle"));
+        directory.put(null, peer("4", "anton", "android", "idle"));
+
+        assertEquals(List.of("2", "1", "4"), ids(directory.search("AN", null, null, null, 10)));
+        assertEquals(List.of("4"), ids(directory.search("an", "Android", "idle", null, 10)));
+        assertEquals(List.of("2", "4", "3"), ids(directory.search(null, null, "idle", null, 10)));
+        assertTrue(directory.search(null, "web", null, null, 10).peers().isEmpty());
+    }
+
+    @Test
+    void updateMovesPeerBetweenIndexes() {
+        PeerDirectory directory = new PeerDirectory();
+        Peer before = peer("1", "zed", "android", "idle");
+        directory.put(null, before);
+        directory.put(before, peer("1", "amy", "ios", "busy"));
+
+        assertTrue(directory.search(null, "android", null, null, 10).peers().isEmpty());
+        assertEquals(List.of("1"), ids(directory.search("am", "ios", "busy", null, 10)));
+        assertTrue(directory.search("zed", null, null, null, 10).peers().isEmpty());
+
+        directory.remove(peer("1", "amy", "ios", "busy"));
+        assertTrue(directory.search(null, null, null, null, 10).peers().isEmpty());
+    }
+
+    @Test
+    void malformedCursorStartsFromTheBeginning() {
+        PeerDirectory directory = new PeerDirectory();
+        directory.put(null, peer("1", "amy", "ios", "idle"));
+
+        assertEquals(List.of("1"), ids(directory.search(null, null, null, "%%%not-base64", 10)));
+    }
+}
@@ -0,0 +1,140 @@
+package dev.lunov.p2p_server.service;
+
+import dev.lunov.p2p_server.model.Peer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PeerLivenessTests {
+
+    private static final long STALE_MS = 30_000;
+    private static final long TIMEOUT_MS = 90_000;
+
+    private final List<Message<?>> outbound = new ArrayList<>();
+    private PresenceService presenceService;
+    private SignalRouter signalRouter;
+    private CallRegistry callRegistry;
+    private PeerLiveness liveness;
+
+    @BeforeEach
+    void setUp() {
+        ExecutorSubscribableChannel clientOutbound = new ExecutorSubscribableChannel();
+        clientOutbound.subscribe(outbound::add);
+        StandaloneClusterBus clusterBus = new StandaloneClusterBus("node-a");
+        presenceService = new PresenceService();
+        ReflectionTestUtils.setField(presenceService, "messagingTemplate", new SimpMessagingTemplate(new ExecutorSubscribableChannel()));
+        ReflectionTestUtils.setField(presenceService, "clusterBus", clusterBus);
+        signalRouter = new SignalRouter();
+        ReflectionTestUtils.setField(signalRouter, "clientOutboundChannel", new ExecutorSubscribableChannel());
+        ReflectionTestUtils.setField(signalRouter, "presenceService", presenceService);
+        ReflectionTestUtils.setField(signalRouter, "clusterBus", clusterBus);
+        signalRouter.init();
+        callRegistry = new CallRegistry();
+        ReflectionTestUtils.setField(callRegistry, "signalRouter", signalRouter);
+        callRegistry.init();
+
+        liveness = new PeerLiveness();
+        ReflectionTestUtils.setField(liveness, "presenceService", presenceService);
+        ReflectionTestUtils.setField(liveness, "signalRouter", signalRouter);
+        ReflectionTestUtils.setField(liveness, "callRegistry", callRegistry);
+        ReflectionTestUtils.setField(liveness, "clientOutboundChannel", clientOutbound);
+        ReflectionTestUtils.setField(liveness, "staleMs", STALE_MS);
+        ReflectionTestUtils.setField(liveness, "timeoutMs", TIMEOUT_MS);
+        liveness.init();
+    }
+
+    @AfterEach
+    void shutdown() {
+        liveness.shutdown();
+        callRegistry.shutdown();
+    }
+
+    private void register(String peerId, String sessionId) {
+        presenceService.register(new Peer(peerId, "10.0.0.1", "android", "Peer", true, "idle", null, null, null), sessionId);
+        liveness.track(sessionId, peerId);
+    }
+
+    // Deadlines fire on one-second ticks; tests age the session and run the check directly
+    private void silentFor(String sessionId, long ms) {
+        Object clock = ((Map<?, ?>) ReflectionTestUtils.getField(liveness, "sessions")).get(sessionId);
+        ReflectionTestUtils.setField(clock, "lastSeen", System.currentTimeMillis() - ms);
+        ReflectionTestUtils.invokeMethod(liveness, "check", sessionId);
+    }
+
+    private void frameFrom(String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.HEARTBEAT);
+        accessor.setSessionId(sessionId);
+        liveness.preSend(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()), null);
+    }
+
+    private long stat(String name) {
+        return ((Number) liveness.getStats().get(name)).longValue();
+    }
+
+    @Test
+    void leavesAnActiveSessionAlone() {
+        register("p1", "s1");
+
+        silentFor("s1", STALE_MS / 2);
+
+        assertTrue(presenceService.getPeer("p1").online());
+        assertEquals(0, stat("stale"));
+    }
+
+    @Test
+    void flagsAQuietPeerOfflineUntilItsNextFrame() {
+        register("p1", "s1");
+
+        silentFor("s1", STALE_MS + 1000);
+        assertFalse(presenceService.getPeer("p1").online());
+        assertEquals(1, stat("stale"));
+
+        frameFrom("s1");
+        assertTrue(presenceService.getPeer("p1").online());
+        assertEquals(1, stat("recovered"));
+        assertEquals(0, stat("stale"));
+    }
+
+    @Test
+    void evictsASilentPeerAndClosesItsSession() {
+        register("p1", "s1");
+        signalRouter.subscribe("s1", "sub0", "/topic/webrtc/ice/p1");
+
+        silentFor("s1", TIMEOUT_MS + 1000);
+
+        assertFalse(presenceService.isOnline("p1"));
+        assertFalse(signalRouter.hasRoute("/topic/webrtc/ice/p1"));
+        assertEquals(0, stat("tracked"));
+        assertEquals(1, stat("evicted"));
+        assertEquals(1, outbound.size());
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(outbound.get(0));
+        assertEquals(SimpMessageType.DISCONNECT_ACK, accessor.getMessageType());
+        assertEquals("s1", accessor.getSessionId());
+    }
+
+    @Test
+    void stopsWatchingTheOldSessionWhenAPeerRegistersAgain() {
+        register("p1", "s1");
+        register("p1", "s2");
+
+        assertEquals(1, stat("tracked"));
+        ReflectionTestUtils.invokeMethod(liveness, "check", "s1");
+        assertTrue(presenceService.isOnline("p1"));
+        assertTrue(outbound.isEmpty());
+    }
+}
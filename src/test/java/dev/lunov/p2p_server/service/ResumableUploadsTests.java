@@ -0,0 +1,118 @@
+package dev.lunov.p2p_server.service;
+
+import dev.lunov.p2p_server.dto.UploadStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResumableUploadsTests {
+
+    @TempDir
+    Path root;
+
+    private ChannelFileStore store;
+    private ResumableUploads uploads;
+
+    @BeforeEach
+    void open() throws IOException {
+        store = new ChannelFileStore(root);
+        ReflectionTestUtils.setField(store, "fileMetadataCache", new FileMetadataCache());
+        store.init();
+        StorageQuotas quotas = new StorageQuotas(root);
+        ReflectionTestUtils.setField(quotas, "channelFileStore", store);
+        ReflectionTestUtils.setField(quotas, "userMb", 1L);
+        ReflectionTestUtils.setField(quotas, "channelMb", 1L);
+        ReflectionTestUtils.setField(quotas, "minFreeMb", 0L);
+        quotas.init();
+        uploads = new ResumableUploads(root);
+        ReflectionTestUtils.setField(uploads, "channelFileStore", store);
+        ReflectionTestUtils.setField(uploads, "storageQuotas", quotas);
+        ReflectionTestUtils.setField(uploads, "maxBytes", 1024L * 1024);
+        uploads.init();
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        store.shutdown();
+    }
+
+    private static InputStream body(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void resumesFromTheReportedOffsetAndStoresTheFile() throws IOException {
+        String id = uploads.create(10, "notes.txt", "alice", null).uploadId();
+
+        assertEquals(4, uploads.append(id, "alice", 0, body("0123")).offset());
+        assertEquals(4, uploads.status(id, "alice").offset());
+        UploadStatus done = uploads.append(id, "alice", 4, body("456789"));
+
+        assertEquals(10, done.offset());
+        assertEquals(id + ".txt", done.fileId());
+        ChannelFileStore.StoredFile stored = store.get(done.fileId());
+        assertNotNull(stored);
+        assertEquals("alice", stored.owner());
+        assertArrayEquals("0123456789".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(store.blobPath(stored.hash())));
+    }
+
+    @Test
+    void refusesAChunkAtTheWrongOffset() throws IOException {
+        String id = uploads.create(10, "notes.txt", "alice", null).uploadId();
+        uploads.append(id, "alice", 0, body("0123"));
+
+        assertThrows(IllegalStateException.class, () -> uploads.append(id, "alice", 2, body("23456789")));
+        assertThrows(IllegalStateException.class, () -> uploads.append(id, "alice", 6, body("6789")));
+        assertEquals(4, uploads.status(id, "alice").offset());
+    }
+
+    @Test
+    void keepsTheBytesUpToTheLengthOfAnOverlongChunk() throws IOException {
+        String id = uploads.create(4, "notes.txt", "alice", null).uploadId();
+
+        assertThrows(IllegalArgumentException.class, () -> uploads.append(id, "alice", 0, body("012345")));
+        UploadStatus status = uploads.status(id, "alice");
+        assertEquals(4, status.offset());
+        assertNotNull(status.fileId());
+    }
+
+    @Test
+    void hidesAnUploadFromEveryoneButItsOwner() throws IOException {
+        String id = uploads.create(10, "notes.txt", "alice", null).uploadId();
+
+        assertNull(uploads.status(id, "mallory"));
+        assertNull(uploads.append(id, "mallory", 0, body("0123456789")));
+        assertEquals(0, uploads.status(id, "alice").offset());
+    }
+
+    @Test
+    void deletesPartialFilesLeftByAPreviousRun() throws IOException {
+        String id = uploads.create(10, "notes.txt", "alice", null).uploadId();
+        uploads.append(id, "alice", 0, body("0123"));
+        Path partial = root.resolve("partial").resolve(id + ".part");
+        assertTrue(Files.exists(partial));
+
+        ResumableUploads restarted = new ResumableUploads(root);
+        restarted.init();
+
+        assertFalse(Files.exists(partial));
+        assertNull(restarted.status(id, "alice"));
+    }
+}
@@ -0,0 +1,203 @@
+package dev.lunov.p2p_server.service;
+
+import dev.lunov.p2p_server.model.ClusterMessage;
+import dev.lunov.p2p_server.model.Peer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SignalRouterTests {
+
+    private static final String ICE = "/topic/webrtc/ice/p1";
+
+    private final List<Message<?>> delivered = new ArrayList<>();
+    private final List<String> forwardedTo = new ArrayList<>();
+    private final List<ClusterMessage> forwarded = new ArrayList<>();
+    private PresenceService presenceService;
+    private SignalRouter router;
+
+    @BeforeEach
+    void setUp() {
+        ExecutorSubscribableChannel outbound = new ExecutorSubscribableChannel();
+        outbound.subscribe(delivered::add);
+        ClusterBus clusterBus = new StandaloneClusterBus("node-a") {
+            @Override
+            public boolean send(String nodeId, ClusterMessage message) {
+                forwardedTo.add(nodeId);
+                forwarded.add(message);
+                return true;
+            }
+        };
+        presenceService = new PresenceService();
+        ReflectionTestUtils.setField(presenceService, "messagingTemplate", new SimpMessagingTemplate(new ExecutorSubscribableChannel()));
+        ReflectionTestUtils.setField(presenceService, "clusterBus", clusterBus);
+        router = new SignalRouter();
+        ReflectionTestUtils.setField(router, "clientOutboundChannel", outbound);
+        SimpMessagingTemplate messagingTemplate = new SimpMessagingTemplate(outbound);
+        messagingTemplate.setMessageConverter(new StringMessageConverter());
+        ReflectionTestUtils.setField(router, "messagingTemplate", messagingTemplate);
+        ReflectionTestUtils.setField(router, "presenceService", presenceService);
+        ReflectionTestUtils.setField(router, "clusterBus", clusterBus);
+        router.init();
+    }
+
+    private static Peer peer(String id) {
+        return new Peer(id, "10.0.0.1", "android", "Peer " + id, true, "idle", null, null, null);
+    }
+
+    @Test
+    void parsesPeerTopics() {
+        assertEquals("p1", SignalRouter.peerIdOf(ICE));
+        assertEquals("p1", SignalRouter.peerIdOf("/topic/message/p1"));
+        assertNull(SignalRouter.peerIdOf("/topic/presence"));
+        assertNull(SignalRouter.peerIdOf("/topic/webrtc/ice/"));
+        assertNull(SignalRouter.peerIdOf("/topic/channel/general"));
+        assertNull(SignalRouter.peerIdOf(null));
+    }
+
+    @Test
+    void deliversToTheSubscribedSession() {
+        presenceService.register(peer("p1"), "s1");
+        assertTrue(router.subscribe("s1", "sub0", ICE));
+
+        assertTrue(router.send(ICE, "candidate"));
+
+        assertEquals(1, delivered.size());
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(delivered.get(0));
+        assertEquals("s1", accessor.getSessionId());
+        assertEquals("sub0", accessor.getSubscriptionId());
+        assertEquals(ICE, accessor.getDestination());
+        assertArrayEquals("candidate".getBytes(StandardCharsets.UTF_8), (byte[]) delivered.get(0).getPayload());
+    }
+
+    @Test
+    void refusesSubscriptionsFromSessionsThatDidNotRegisterThePeer() {
+        assertFalse(router.subscribe("s1", "sub0", ICE));
+        presenceService.register(peer("p2"), "s1");
+        assertFalse(router.subscribe("s1", "sub0", ICE));
+        assertFalse(router.hasRoute(ICE));
+        assertTrue(router.subscribe("s1", "sub1", "/topic/presence"));
+    }
+
+    @Test
+    void skipsARouteWhoseSessionNoLongerSpeaksForThePeer() {
+        presenceService.register(peer("p1"), "s1");
+        router.subscribe("s1", "sub0", ICE);
+        presenceService.register(peer("p1"), "s2");
+
+        assertFalse(router.send(ICE, "candidate"));
+        assertTrue(delivered.isEmpty());
+
+        router.subscribe("s2", "sub0", ICE);
+        assertTrue(router.send(ICE, "candidate"));
+        assertEquals("s2", SimpMessageHeaderAccessor.wrap(delivered.get(0)).getSessionId());
+    }
+
+    @Test
+    void reportsOfflineAndUnsubscribedPeersAsNotSent() {
+        assertFalse(router.send(ICE, "candidate"));
+
+        presenceService.register(peer("p1"), "s1");
+        assertFalse(router.send(ICE, "candidate"));
+        assertTrue(delivered.isEmpty());
+        assertTrue(forwarded.isEmpty());
+    }
+
+    @Test
+    void unsubscribeAndSessionRemovalDropRoutes() {
+        presenceService.register(peer("p1"), "s1");
+        router.subscribe("s1", "sub0", ICE);
+        router.subscribe("s1", "sub1", "/topic/message/p1");
+
+        router.unsubscribe("s1", "sub0");
+        assertFalse(router.hasRoute(ICE));
+        assertTrue(router.hasRoute("/topic/message/p1"));
+
+        router.removeSession("s1");
+        assertFalse(router.hasRoute("/topic/message/p1"));
+    }
+
+    @Test
+    void forwardsFramesForRemotePeersToTheirNode() {
+        presenceService.registerRemote(peer("p1"), "node-b");
+
+        assertTrue(router.send(ICE, "candidate"));
+
+        assertTrue(delivered.isEmpty());
+        assertEquals(List.of("node-b"), forwardedTo);
+        ClusterMessage message = forwarded.get(0);
+        assertEquals(ClusterMessage.Type.DELIVER, message.type());
+        assertEquals("node-a", message.sourceNode());
+        assertEquals(ICE, message.destination());
+        assertArrayEquals("candidate".getBytes(StandardCharsets.UTF_8), message.payload());
+    }
+
+    @Test
+    void doesNotForwardReceivedFramesAgain() {
+        presenceService.registerRemote(peer("p1"), "node-c");
+        ClusterMessage message = ClusterMessage.frame(ClusterMessage.Type.DELIVER, "node-b", ICE,
+                MimeTypeUtils.TEXT_PLAIN_VALUE, Map.of(), new byte[]{1});
+
+        assertFalse(router.receive(message));
+        assertTrue(forwarded.isEmpty());
+    }
+
+    @Test
+    void relaysBodiesUnchangedWithTheirContentType() {
+        presenceService.register(peer("p1"), "s1");
+        router.subscribe("s1", "sub0", ICE);
+        byte[] body = {0, (byte) 0xff, 42};
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create();
+        accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+
+        assertTrue(router.relay(ICE, MessageBuilder.createMessage(body, accessor.getMessageHeaders())));
+
+        Message<?> out = delivered.get(0);
+        assertArrayEquals(body, (byte[]) out.getPayload());
+        assertEquals(MimeTypeUtils.APPLICATION_OCTET_STREAM, SimpMessageHeaderAccessor.wrap(out).getContentType());
+        assertTrue(SignalRouter.isBinary(out));
+    }
+
+    @Test
+    void forwardsRelayedBodiesWithTheirContentType() {
+        presenceService.registerRemote(peer("p1"), "node-b");
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create();
+        accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+
+        router.relay(ICE, MessageBuilder.createMessage(new byte[]{1, 2}, accessor.getMessageHeaders()));
+
+        assertEquals(MimeTypeUtils.APPLICATION_OCTET_STREAM_VALUE, forwarded.get(0).contentType());
+        assertArrayEquals(new byte[]{1, 2}, forwarded.get(0).payload());
+    }
+
+    @Test
+    void relaysBodiesWithoutAContentTypeAsUtf8Text() {
+        presenceService.register(peer("p1"), "s1");
+        router.subscribe("s1", "sub0", ICE);
+
+        router.relay(ICE, MessageBuilder.withPayload("{}".getBytes(StandardCharsets.UTF_8)).build());
+
+        Message<?> out = delivered.get(0);
+        assertEquals(new MimeType("text", "plain", StandardCharsets.UTF_8), SimpMessageHeaderAccessor.wrap(out).getContentType());
+        assertFalse(SignalRouter.isBinary(out));
+    }
+}
@@ -0,0 +1,129 @@
+package dev.lunov.p2p_server.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StorageQuotasTests {
+
+    private static final long MB = 1024 * 1024;
+
+    @TempDir
+    Path root;
+
+    private ChannelFileStore store;
+
+    @BeforeEach
+    void openStore() throws IOException {
+        store = new ChannelFileStore(root);
+        ReflectionTestUtils.setField(store, "fileMetadataCache", new FileMetadataCache());
+        store.init();
+    }
+
+    @AfterEach
+    void closeStore() throws IOException {
+        store.shutdown();
+    }
+
+    private StorageQuotas quotas(long userMb, long channelMb, long minFreeMb) {
+        StorageQuotas quotas = new StorageQuotas(root);
+        ReflectionTestUtils.setField(quotas, "channelFileStore", store);
+        ReflectionTestUtils.setField(quotas, "userMb", userMb);
+        ReflectionTestUtils.setField(quotas, "channelMb", channelMb);
+        ReflectionTestUtils.setField(quotas, "minFreeMb", minFreeMb);
+        quotas.init();
+        return quotas;
+    }
+
+    private void store(String fileId, int size, String owner, String channelId) throws IOException {
+        byte[] content = new byte[size];
+        content[0] = (byte) fileId.hashCode();
+        store.store(new ByteArrayInputStream(content), fileId, owner, channelId);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Long> top(StorageQuotas quotas, String name) {
+        return (Map<String, Long>) quotas.getStats().get(name);
+    }
+
+    @Test
+    void reservationsCountAgainstTheUserUntilReleased() {
+        StorageQuotas quotas = quotas(1, 100, 0);
+
+        StorageQuotas.Reservation first = quotas.reserve("alice", null, MB / 2);
+        quotas.reserve("alice", null, MB / 2);
+        StorageQuotas.QuotaExceededException e = assertThrows(StorageQuotas.QuotaExceededException.class,
+                () -> quotas.reserve("alice", null, 1));
+        assertFalse(e.isLowDisk());
+        quotas.reserve("bob", null, MB);
+
+        quotas.release(first);
+        quotas.reserve("alice", null, MB / 2);
+        assertEquals(2 * MB, quotas.getStats().get("reservedBytes"));
+        assertEquals(1L, quotas.getStats().get("rejectedOverQuota"));
+    }
+
+    @Test
+    void channelQuotaIsSharedByItsMembers() {
+        StorageQuotas quotas = quotas(100, 1, 0);
+
+        quotas.reserve("alice", "general", MB / 2);
+        quotas.reserve("bob", "general", MB / 2);
+        assertThrows(StorageQuotas.QuotaExceededException.class, () -> quotas.reserve("carol", "general", 1));
+        quotas.reserve("carol", "random", MB);
+        quotas.reserve("carol", null, MB);
+    }
+
+    @Test
+    void chargesStoredFilesFromTheStore() throws IOException {
+        store("before.bin", 300, "alice", "general");
+        StorageQuotas quotas = quotas(100, 100, 0);
+        store("after.bin", 200, "alice", "random");
+        store("bob.bin", 100, "bob", "general");
+
+        assertEquals(List.of("alice", "bob"), List.copyOf(top(quotas, "topUsers").keySet()));
+        assertEquals(500L, top(quotas, "topUsers").get("alice"));
+        assertEquals(400L, top(quotas, "topChannels").get("general"));
+
+        store.delete("before.bin");
+        store.delete("bob.bin");
+        assertEquals(Map.of("alice", 200L), top(quotas, "topUsers"));
+        assertEquals(Map.of("random", 200L), top(quotas, "topChannels"));
+    }
+
+    @Test
+    void replacingAFileMovesTheCharge() throws IOException {
+        StorageQuotas quotas = quotas(100, 100, 0);
+        store("file.bin", 300, "alice", "general");
+        store("file.bin", 100, "bob", "general");
+
+        assertEquals(Map.of("bob", 100L), top(quotas, "topUsers"));
+        assertEquals(Map.of("general", 100L), top(quotas, "topChannels"));
+    }
+
+    @Test
+    void refusesUploadsThatWouldLeaveTooLittleDisk() {
+        StorageQuotas quotas = quotas(Long.MAX_VALUE / MB, Long.MAX_VALUE / MB, Long.MAX_VALUE / MB);
+
+        StorageQuotas.QuotaExceededException e = assertThrows(StorageQuotas.QuotaExceededException.class,
+                () -> quotas.reserve("alice", null, 1));
+        assertTrue(e.isLowDisk());
+        assertThrows(StorageQuotas.QuotaExceededException.class, () -> quotas.checkDisk(0));
+        assertEquals(2L, quotas.getStats().get("rejectedLowDisk"));
+        assertEquals(0L, quotas.getStats().get("reservedBytes"));
+        assertEquals(0, quotas.getStats().get("users"));
+    }
+}
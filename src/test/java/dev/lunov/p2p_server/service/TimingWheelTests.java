@@ -0,0 +1,87 @@
+package dev.lunov.p2p_server.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTests {
+
+    private final BlockingQueue<String> expired = new LinkedBlockingQueue<>();
+    private TimingWheel<String> wheel;
+
+    @AfterEach
+    void stop() {
+        if (wheel != null) {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    void expiresKeysInDeadlineOrder() throws InterruptedException {
+        wheel = new TimingWheel<>("test-wheel", 10, 64, expired::add);
+        wheel.schedule("late", 120);
+        wheel.schedule("early", 30);
+        assertEquals(2, wheel.size());
+
+        assertEquals("early", expired.poll(2, TimeUnit.SECONDS));
+        assertEquals("late", expired.poll(2, TimeUnit.SECONDS));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void waitsOutExtraRoundsBeyondOneRevolution() throws InterruptedException {
+        // 4 slots of 10 ms: 100 ms is two full revolutions and a half
+        wheel = new TimingWheel<>("test-wheel", 10, 4, expired::add);
+        long start = System.nanoTime();
+        wheel.schedule("key", 100);
+
+        assertEquals("key", expired.poll(2, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 80);
+    }
+
+    @Test
+    void cancelledKeysNeverExpire() throws InterruptedException {
+        wheel = new TimingWheel<>("test-wheel", 10, 16, expired::add);
+        wheel.schedule("cancelled", 20);
+        wheel.schedule("kept", 60);
+
+        assertTrue(wheel.cancel("cancelled"));
+        assertFalse(wheel.cancel("cancelled"));
+        assertEquals("kept", expired.poll(2, TimeUnit.SECONDS));
+        assertNull(expired.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void schedulingAgainReplacesThePendingTimeout() throws InterruptedException {
+        wheel = new TimingWheel<>("test-wheel", 10, 16, expired::add);
+        wheel.schedule("key", 20);
+        wheel.schedule("key", 300);
+        assertEquals(1, wheel.size());
+
+        assertNull(expired.poll(150, TimeUnit.MILLISECONDS));
+        assertEquals("key", expired.poll(2, TimeUnit.SECONDS));
+        assertNull(expired.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void aFailingCallbackDoesNotStopTheWheel() throws InterruptedException {
+        wheel = new TimingWheel<>("test-wheel", 10, 16, key -> {
+            if (key.equals("bad")) {
+                throw new IllegalStateException("boom");
+            }
+            expired.add(key);
+        });
+        wheel.schedule("bad", 10);
+        wheel.schedule("good", 50);
+
+        assertEquals("good", expired.poll(2, TimeUnit.SECONDS));
+    }
+}